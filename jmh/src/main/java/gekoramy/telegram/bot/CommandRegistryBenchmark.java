@@ -0,0 +1,104 @@
+package gekoramy.telegram.bot;
+
+import gekoramy.telegram.bot.exception.TwoCommandException;
+import gekoramy.telegram.bot.metrics.MetricsRegistry;
+import gekoramy.telegram.bot.model.Command;
+import gekoramy.telegram.bot.model.UseCaseCommand;
+import gekoramy.telegram.bot.model.query.Query;
+import gekoramy.telegram.bot.responder.CallbackQueryResponder;
+import gekoramy.telegram.bot.responder.InlineQueryResponder;
+import gekoramy.telegram.bot.responder.MessageResponder;
+import gekoramy.telegram.bot.timed.TimedSender;
+import gekoramy.telegram.bot.util.UselessMonitor;
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.api.objects.CallbackQuery;
+import org.telegram.telegrambots.api.objects.Chat;
+import org.telegram.telegrambots.api.objects.Location;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.User;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * From the update to the UseCaseCommand, with 32 registered commands
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandRegistryBenchmark {
+
+    private static final int COMMANDS = 32;
+    private static final String BOT_USERNAME = "BenchBot";
+
+    private CommandRegistry registry;
+    private TimedSender sender;
+    private Message command;
+    private Message commandWithUsername;
+    private Message unknownCommand;
+    private CallbackQuery callbackQuery;
+    private InlineQuery inlineQuery;
+
+    @Setup
+    public void setup() throws TwoCommandException {
+        registry = new CommandRegistry(BOT_USERNAME, new UselessMonitor(), new MetricsRegistry());
+        for (int i = 0; i < COMMANDS; i++)
+            registry.register(new NoOpCommand("command" + i));
+
+        sender = Fixtures.discardingSender();
+        command = Fixtures.message(1, "/command17 some arguments");
+        commandWithUsername = Fixtures.message(1, "/command17@" + BOT_USERNAME + " some arguments");
+        unknownCommand = Fixtures.message(1, "/unknown some arguments");
+        callbackQuery = Fixtures.callbackQuery(1, "cmd:command17\npage:3\nid:42\n", "text");
+        inlineQuery = Fixtures.inlineQuery(1, "command17 some arguments");
+    }
+
+    @Benchmark
+    public void respondCommand() {
+        registry.respondCommand(sender, command);
+    }
+
+    @Benchmark
+    public void respondCommandWithUsername() {
+        registry.respondCommand(sender, commandWithUsername);
+    }
+
+    @Benchmark
+    public void respondUnknownCommand() {
+        registry.respondCommand(sender, unknownCommand);
+    }
+
+    @Benchmark
+    public void respondCallbackQuery() {
+        registry.respondCallbackQuery(sender, callbackQuery);
+    }
+
+    @Benchmark
+    public void respondInlineQuery() {
+        registry.respondInlineQuery(sender, inlineQuery);
+    }
+
+    private static final class NoOpCommand extends UseCaseCommand {
+        private NoOpCommand(String identifier) {
+            super(new Command(identifier, "benchmark"));
+        }
+
+        @Override
+        public void respondCommand(MessageResponder absSender, Chat chat, User user, String arguments) {
+        }
+
+        @Override
+        public void respondCallbackQuery(CallbackQueryResponder absSender, Query query, User user, Message message) {
+        }
+
+        @Override
+        public void respondInlineQuery(InlineQueryResponder absSender, User from, String arguments, Location location) {
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package gekoramy.telegram.bot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gekoramy.telegram.bot.timed.Chats;
+import gekoramy.telegram.bot.timed.Priority;
+import gekoramy.telegram.bot.timed.TimedSender;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.objects.CallbackQuery;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Telegram objects have no setters: they're read from JSON, as the library does
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class Fixtures {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private Fixtures() {
+    }
+
+    public static Message message(long chatId, String text) {
+        String entities = text.startsWith("/")
+                ? ",\"entities\":[{\"type\":\"bot_command\",\"offset\":0,\"length\":" + (text + " ").indexOf(' ') + "}]"
+                : "";
+
+        return read("{\"message_id\":1,\"date\":0," +
+                "\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}," +
+                "\"from\":{\"id\":" + chatId + ",\"first_name\":\"bench\",\"is_bot\":false}," +
+                "\"text\":" + quote(text) + entities + "}", Message.class);
+    }
+
+    public static CallbackQuery callbackQuery(long chatId, String data, String messageText) {
+        return read("{\"id\":\"1\"," +
+                "\"from\":{\"id\":" + chatId + ",\"first_name\":\"bench\",\"is_bot\":false}," +
+                "\"message\":" + write(message(chatId, messageText)) + "," +
+                "\"chat_instance\":\"1\",\"data\":" + quote(data) + "}", CallbackQuery.class);
+    }
+
+    public static InlineQuery inlineQuery(long userId, String query) {
+        return read("{\"id\":\"1\"," +
+                "\"from\":{\"id\":" + userId + ",\"first_name\":\"bench\",\"is_bot\":false}," +
+                "\"query\":" + quote(query) + ",\"offset\":\"\"}", InlineQuery.class);
+    }
+
+    /**
+     * @return a TimedSender which discards every method
+     */
+    public static TimedSender discardingSender() {
+        final Chats chats = new Chats();
+        return new TimedSender() {
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method) {
+            }
+
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method, Priority priority) {
+            }
+
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method) {
+                return new CompletableFuture<>();
+            }
+
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method, Priority priority) {
+                return new CompletableFuture<>();
+            }
+
+            @Override
+            public Chats getChats() {
+                return chats;
+            }
+        };
+    }
+
+    private static String quote(String text) {
+        try {
+            return MAPPER.writeValueAsString(text);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String write(Object object) {
+        try {
+            return MAPPER.writeValueAsString(object);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T read(String json, Class<T> type) {
+        try {
+            return MAPPER.readValue(json, type);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
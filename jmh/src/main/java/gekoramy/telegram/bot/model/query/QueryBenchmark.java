@@ -0,0 +1,69 @@
+package gekoramy.telegram.bot.model.query;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and parsing callback_data, in both the formats
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+
+    private final QuerySchema schema = new QuerySchema("page", "id", "stop");
+    private QueryParser parser;
+    private String data;
+    private String packed;
+
+    @Setup
+    public void setup() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        codec.register("route", schema);
+        parser = new QueryParser(codec);
+
+        data = buildQuery();
+        packed = buildPackedQuery();
+    }
+
+    @Benchmark
+    public String buildQuery() {
+        return new QueryBuilder()
+                .put(Regex.COMMAND, "route")
+                .put("page", "3")
+                .put("id", "123456")
+                .put("stop", "Piazza Dante")
+                .build();
+    }
+
+    @Benchmark
+    public String buildPackedQuery() {
+        return new PackedQueryBuilder(schema)
+                .put("page", 3)
+                .put("id", 123456)
+                .put("stop", "Piazza Dante")
+                .build();
+    }
+
+    @Benchmark
+    public String parseQuery() {
+        return parser.parse(data).getCommandIdentifier();
+    }
+
+    @Benchmark
+    public String parseQueryValue() {
+        return parser.parse(data).get("stop");
+    }
+
+    @Benchmark
+    public String parsePackedQuery() {
+        return parser.parse(packed).get("stop");
+    }
+}
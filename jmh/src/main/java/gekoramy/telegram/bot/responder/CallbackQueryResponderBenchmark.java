@@ -0,0 +1,49 @@
+package gekoramy.telegram.bot.responder;
+
+import gekoramy.telegram.bot.Fixtures;
+import gekoramy.telegram.bot.util.UselessMonitor;
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.api.methods.ParseMode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparison between the edited text and the one of the message, done on every EditMessageText
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallbackQueryResponderBenchmark {
+
+    private static final String UNFORMATTED = "Route 5 - Piazza Dante\nnext departure in 4 minutes";
+    private static final String MARKDOWN = "*Route 5* - _Piazza Dante_\nnext departure in `4` minutes";
+    private static final String HTML = "<b>Route 5</b> - <i>Piazza Dante</i>\nnext departure in <code>4</code> minutes";
+
+    private CallbackQueryResponder responder;
+
+    @Setup
+    public void setup() {
+        responder = new CallbackQueryResponder(
+                Fixtures.discardingSender(),
+                new UselessMonitor(),
+                "route",
+                Fixtures.callbackQuery(1, "cmd:route\n", UNFORMATTED)
+        );
+    }
+
+    @Benchmark
+    public boolean equalsMarkdown() {
+        return responder.equalsFormattedTexts(MARKDOWN, UNFORMATTED, ParseMode.MARKDOWN);
+    }
+
+    @Benchmark
+    public boolean equalsHtml() {
+        return responder.equalsFormattedTexts(HTML, UNFORMATTED, ParseMode.HTML);
+    }
+}
@@ -0,0 +1,52 @@
+package gekoramy.telegram.bot.timed;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chats lookups done by the sender for every message, with 1 to 1M known chats
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ChatsBenchmark {
+
+    @Param({"1", "1000", "1000000"})
+    public int chats;
+
+    private Chats state;
+
+    @Setup
+    public void setup() {
+        state = new Chats(2 * chats + 16, 1, TimeUnit.DAYS);
+
+        long now = System.currentTimeMillis();
+        for (long chatId = 0; chatId < chats; chatId++) {
+            state.update(chatId, now);
+            state.setCommand(chatId, "start");
+        }
+    }
+
+    @Benchmark
+    public int getSent() {
+        return state.getSent(ThreadLocalRandom.current().nextInt(chats), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public void update() {
+        state.update(ThreadLocalRandom.current().nextInt(chats), System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public String getCommand() {
+        return state.getCommand(ThreadLocalRandom.current().nextInt(chats));
+    }
+}
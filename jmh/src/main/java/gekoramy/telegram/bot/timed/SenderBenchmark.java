@@ -0,0 +1,92 @@
+package gekoramy.telegram.bot.timed;
+
+import org.openjdk.jmh.annotations.*;
+import org.telegram.telegrambots.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The scheduling loop of TimedDefaultAbsSender against an execute which does nothing:
+ * each operation is a method queued, dispatched and executed
+ * The global limit is lifted and AnswerCallbackQuery doesn't wait for its chat,
+ * so only the scheduling is measured, spread among 1 to 1M chats
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SenderBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({"1", "1000", "1000000"})
+    public int chats;
+
+    @Param({"2", "8"})
+    public int senderThreads;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private TimedDefaultAbsSender sender;
+    private long requested;
+    private long nextChat;
+
+    @Setup
+    public void setup() {
+        sender = new TimedDefaultAbsSender(new DefaultBotOptions(), 20, senderThreads, new Chats(), new TokenBucket(TimeUnit.SECONDS.toNanos(1), Integer.MAX_VALUE)) {
+            @Override
+            public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) {
+                executed.incrementAndGet();
+                return null;
+            }
+
+            @Override
+            protected void onFailure(Exception e) {
+                failures.incrementAndGet();
+            }
+
+            @Override
+            public String getBotToken() {
+                return "benchmark";
+            }
+        };
+    }
+
+    /**
+     * A failed method would be measured as a cheap one: the iteration fails instead
+     */
+    @TearDown(Level.Iteration)
+    public void checkFailures() {
+        if (failures.get() > 0)
+            throw new IllegalStateException(failures.get() + " methods failed");
+    }
+
+    @TearDown
+    public void tearDown() {
+        sender.shutdownSender();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void requestExecute() {
+        for (int i = 0; i < BATCH; i++) {
+            sender.requestExecute(nextChat, new AnswerCallbackQuery().setCallbackQueryId("1"));
+            nextChat = (nextChat + 1) % chats;
+        }
+
+        requested += BATCH;
+        // a method failed before its execution would never be counted
+        while (executed.get() < requested && failures.get() == 0)
+            LockSupport.parkNanos(1000);
+    }
+}
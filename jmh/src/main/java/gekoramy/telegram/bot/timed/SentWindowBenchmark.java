@@ -0,0 +1,82 @@
+package gekoramy.telegram.bot.timed;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SlidingWindowCounter against the ExpirationQueue it replaced:
+ * a chat sending one message per second, asking how many were sent in the last 2 minutes
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SentWindowBenchmark {
+
+    private static final long WINDOW = TimeUnit.MINUTES.toMillis(2);
+    private static final long SEND_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private SlidingWindowCounter counter;
+    private ExpirationQueue queue;
+    private long time;
+
+    @Setup
+    public void setup() {
+        counter = new SlidingWindowCounter(WINDOW, 24, TimeUnit.MILLISECONDS);
+        queue = new ExpirationQueue(WINDOW);
+        time = 0;
+
+        // steady state: the window is full
+        for (int i = 0; i < WINDOW / SEND_INTERVAL; i++) {
+            time += SEND_INTERVAL;
+            counter.add(time);
+            queue.add(time);
+        }
+    }
+
+    @Benchmark
+    public int slidingWindowCounter() {
+        time += SEND_INTERVAL;
+        counter.add(time);
+        return counter.size(time);
+    }
+
+    @Benchmark
+    public int expirationQueue() {
+        time += SEND_INTERVAL;
+        queue.add(time);
+        return queue.size(time);
+    }
+
+    /**
+     * Chats.ExpirationQueue before SlidingWindowCounter
+     */
+    private static final class ExpirationQueue {
+        private final Queue<Long> updates = new LinkedList<>();
+        private final long duration;
+
+        private ExpirationQueue(long duration) {
+            this.duration = duration;
+        }
+
+        private synchronized void add(long currentTime) {
+            updates.add(currentTime);
+        }
+
+        private synchronized int size(long time) {
+            while (updates.size() > 0 && updates.peek() + duration < time) {
+                updates.poll();
+            }
+
+            return updates.size();
+        }
+    }
+}
@@ -2,27 +2,35 @@ package gekoramy.telegram.bot;
 
 import gekoramy.telegram.bot.exception.NotHandledCommandException;
 import gekoramy.telegram.bot.exception.TwoCommandException;
+import gekoramy.telegram.bot.metrics.MetricsRegistry;
 import gekoramy.telegram.bot.model.Command;
 import gekoramy.telegram.bot.model.Monitor;
 import gekoramy.telegram.bot.model.UseCaseCommand;
+import gekoramy.telegram.bot.model.query.PackedQueryCodec;
 import gekoramy.telegram.bot.model.query.Query;
 import gekoramy.telegram.bot.model.query.QueryParser;
+import gekoramy.telegram.bot.model.query.QueryStore;
 import gekoramy.telegram.bot.responder.CallbackQueryResponder;
 import gekoramy.telegram.bot.responder.InlineCallbackQueryResponder;
 import gekoramy.telegram.bot.responder.InlineQueryResponder;
 import gekoramy.telegram.bot.responder.MessageResponder;
 import gekoramy.telegram.bot.timed.TimedSender;
-import gekoramy.telegram.bot.util.Pair;
+import gekoramy.telegram.bot.util.Histogram;
 import org.telegram.telegrambots.api.objects.CallbackQuery;
 import org.telegram.telegrambots.api.objects.Message;
 import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Associate Commands to UseCaseCommands
+ * The time spent by every UseCaseCommand handling each kind of update is recorded in the MetricsRegistry
  *
  * @author Luca Mosetti
  * @since 2017
@@ -30,64 +38,80 @@ import java.util.Map;
 public class CommandRegistry {
     private final String botUsername;
     private final Map<String, UseCaseCommand> commandRegistryMap;
-    private final QueryParser queryParser;
+    private final PackedQueryCodec packedQueryCodec;
+    private QueryParser queryParser;
+    private volatile CommandTrie commandTrie;
     private final Monitor monitor;
     private final UseCaseCommand useless;
+    private final MetricsRegistry metrics;
+    private final ConcurrentHashMap<String, Histogram> handlerTime = new ConcurrentHashMap<>();
 
     private String defaultCmd = "defaultCmd";
     private String defaultInlineCmd = "defaultInlineCmd";
 
-    CommandRegistry(String botUsername, Monitor monitor) {
+    CommandRegistry(String botUsername, Monitor monitor, MetricsRegistry metrics) {
         this.botUsername = botUsername;
+        this.metrics = metrics;
         this.commandRegistryMap = new HashMap<>();
-        this.queryParser = new QueryParser();
+        this.packedQueryCodec = new PackedQueryCodec();
+        this.queryParser = new QueryParser(packedQueryCodec);
         this.monitor = monitor;
 
         useless = new UseCaseCommand(new Command(defaultCmd, ""));
 
         this.commandRegistryMap.put(defaultCmd, useless);
         this.commandRegistryMap.put(defaultInlineCmd, useless);
+        this.commandTrie = new CommandTrie(this.commandRegistryMap);
     }
 
     public Collection<UseCaseCommand> getRegisteredCommands() {
-        Collection<UseCaseCommand> commands = this.commandRegistryMap.values();
-        commands.remove(useless);
-        commands.remove(useless);
+        Collection<UseCaseCommand> commands = new ArrayList<>(this.commandRegistryMap.values());
+        commands.removeIf(command -> command == useless);
         return commands;
     }
 
     /**
-     * @param text 'command [argument] [argument]'
-     * @return Pair.of(String Command, String Arguments)
+     * @param kind    kind of update handled
+     * @param command command handling it
+     * @param start   System.nanoTime() when the handling started
      */
-    private Pair<String, String> parse(String text) {
-        String command;
-        String parameters = null;
-
-        if (text.contains(" ")) {
-            command = text.substring(0, text.indexOf(" "));
-            parameters = text.substring(text.indexOf(" ") + 1);
-        } else {
-            command = text;
-        }
-
-        command = command.replace("@" + this.botUsername, "").trim();
-
-        return Pair.of(command, parameters);
+    private void handled(String kind, String command, long start) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        handlerTime.computeIfAbsent(kind + ' ' + command, key -> metrics.histogram("bot_handler_seconds", "Time spent by the UseCaseCommands handling the updates", 1e-6, "kind", kind, "command", command))
+                .record(micros);
     }
 
     /**
      * Add an association
      *
      * @param useCaseCommand UseCaseCommand
-     * @throws TwoCommandException trying to register 2 UseCaseCommand with same Command
+     * @throws TwoCommandException trying to register 2 UseCaseCommand with same Command, ignoring case
      */
     public final void register(UseCaseCommand useCaseCommand) throws TwoCommandException {
-        if (this.commandRegistryMap.containsKey(useCaseCommand.getCommand().getCommandIdentifier()))
-            throw new TwoCommandException(useCaseCommand.getCommand());
+        // commands are matched ignoring case: '/Start' would shadow '/start'
+        String identifier = useCaseCommand.getCommand().getCommandIdentifier().toLowerCase(Locale.ROOT);
+        for (String registered : this.commandRegistryMap.keySet())
+            if (registered.toLowerCase(Locale.ROOT).equals(identifier))
+                throw new TwoCommandException(useCaseCommand.getCommand());
+
+        if (useCaseCommand.getQuerySchema() != null)
+            this.packedQueryCodec.register(useCaseCommand.getCommand().getCommandIdentifier(), useCaseCommand.getQuerySchema());
 
         useCaseCommand.init();
         this.commandRegistryMap.put(useCaseCommand.getCommand().getCommandIdentifier(), useCaseCommand);
+
+        // registration happens at startup: the trie is rebuilt instead of being mutable
+        this.commandTrie = new CommandTrie(this.commandRegistryMap);
+    }
+
+    /**
+     * Optional: resolves the callback_data kept by 'store'
+     * It should be the same QueryStore given to the QueryBuilders
+     *
+     * @param store QueryStore
+     */
+    public void setQueryStore(QueryStore store) {
+        this.queryParser = new QueryParser(packedQueryCodec, store);
     }
 
     /**
@@ -125,17 +149,24 @@ public class CommandRegistry {
         if (!message.hasText() || !message.isCommand())
             throw new IllegalArgumentException();
 
-        Pair<String, String> parameters = parse(message.getText().substring(1));
-        String command = this.commandRegistryMap.containsKey(parameters.a()) ? parameters.a() : defaultCmd;
-        String arguments = parameters.b();
+        String text = message.getText();
+        UseCaseCommand useCaseCommand = this.commandTrie.find(text, 1, botUsername);
+        String command = useCaseCommand != null ? useCaseCommand.getCommand().getCommandIdentifier() : defaultCmd;
+        String arguments = CommandTrie.arguments(text, 1);
 
+        if (useCaseCommand == null)
+            useCaseCommand = this.commandRegistryMap.get(defaultCmd);
+
+        long start = System.nanoTime();
         try (MessageResponder responder = new MessageResponder(absSender, monitor, command, message)) {
-            this.commandRegistryMap.get(command).respondCommand(
+            useCaseCommand.respondCommand(
                     responder,
                     message.getChat(),
                     message.getFrom(),
                     arguments
             );
+        } finally {
+            handled("command", command, start);
         }
     }
 
@@ -152,11 +183,14 @@ public class CommandRegistry {
         if (!this.commandRegistryMap.containsKey(command))
             throw new NotHandledCommandException(command);
 
+        long start = System.nanoTime();
         try (MessageResponder responder = new MessageResponder(absSender, monitor, command, message)) {
             this.commandRegistryMap.get(command).respondMessage(
                     responder,
                     message
             );
+        } finally {
+            handled("message", command, start);
         }
     }
 
@@ -172,23 +206,28 @@ public class CommandRegistry {
         Query query = queryParser.parse(cbq.getData());
 
         if (this.commandRegistryMap.containsKey(query.getCommandIdentifier())) {
-            if (cbq.getMessage() != null) {
-                try (CallbackQueryResponder responder = new CallbackQueryResponder(absSender, monitor, query.getCommandIdentifier(), cbq)) {
-                    this.commandRegistryMap.get(query.getCommandIdentifier()).respondCallbackQuery(
-                            responder,
-                            query,
-                            cbq.getFrom(),
-                            cbq.getMessage()
-                    );
-                }
-            } else {
-                try (InlineCallbackQueryResponder responder = new InlineCallbackQueryResponder(absSender, monitor, query.getCommandIdentifier(), cbq)) {
-                    this.commandRegistryMap.get(query.getCommandIdentifier()).respondCallbackQuery(
-                            responder,
-                            query,
-                            cbq.getFrom()
-                    );
+            long start = System.nanoTime();
+            try {
+                if (cbq.getMessage() != null) {
+                    try (CallbackQueryResponder responder = new CallbackQueryResponder(absSender, monitor, query.getCommandIdentifier(), cbq)) {
+                        this.commandRegistryMap.get(query.getCommandIdentifier()).respondCallbackQuery(
+                                responder,
+                                query,
+                                cbq.getFrom(),
+                                cbq.getMessage()
+                        );
+                    }
+                } else {
+                    try (InlineCallbackQueryResponder responder = new InlineCallbackQueryResponder(absSender, monitor, query.getCommandIdentifier(), cbq)) {
+                        this.commandRegistryMap.get(query.getCommandIdentifier()).respondCallbackQuery(
+                                responder,
+                                query,
+                                cbq.getFrom()
+                        );
+                    }
                 }
+            } finally {
+                handled("callback_query", query.getCommandIdentifier(), start);
             }
         }
     }
@@ -201,6 +240,7 @@ public class CommandRegistry {
      * @param inlineQuery InlineQuery
      */
     final void respondInlineQuery(TimedSender absSender, InlineQuery inlineQuery) {
+        long start = System.nanoTime();
         if (!inlineQuery.hasQuery() && inlineQuery.getQuery().isEmpty()) {
             try (InlineQueryResponder responder = new InlineQueryResponder(absSender, monitor, this.defaultInlineCmd, inlineQuery)) {
                 this.commandRegistryMap.get(this.defaultInlineCmd).respondInlineQuery(
@@ -209,21 +249,29 @@ public class CommandRegistry {
                         "",
                         inlineQuery.getLocation()
                 );
+            } finally {
+                handled("inline_query", this.defaultInlineCmd, start);
             }
             return;
         }
 
-        Pair<String, String> parameters = parse(inlineQuery.getQuery());
-        String command = this.commandRegistryMap.containsKey(parameters.a()) ? parameters.a() : defaultInlineCmd;
-        String arguments = parameters.b();
+        String text = inlineQuery.getQuery();
+        UseCaseCommand useCaseCommand = this.commandTrie.find(text, 0, botUsername);
+        String command = useCaseCommand != null ? useCaseCommand.getCommand().getCommandIdentifier() : defaultInlineCmd;
+        String arguments = CommandTrie.arguments(text, 0);
+
+        if (useCaseCommand == null)
+            useCaseCommand = this.commandRegistryMap.get(defaultInlineCmd);
 
         try (InlineQueryResponder responder = new InlineQueryResponder(absSender, monitor, command, inlineQuery)) {
-            this.commandRegistryMap.get(command).respondInlineQuery(
+            useCaseCommand.respondInlineQuery(
                     responder,
                     inlineQuery.getFrom(),
                     arguments,
                     inlineQuery.getLocation()
             );
+        } finally {
+            handled("inline_query", command, start);
         }
     }
 }
@@ -0,0 +1,127 @@
+package gekoramy.telegram.bot;
+
+import gekoramy.telegram.bot.model.UseCaseCommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of the lower-cased command identifiers
+ * It reads 'command[@botUsername][ arguments]' in place, without extracting the command
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class CommandTrie {
+
+    private static final char ARGUMENTS = ' ';
+    private static final char USERNAME = '@';
+
+    private final Node root;
+
+    /**
+     * @param commands by identifier, no two of them differing only by case
+     */
+    CommandTrie(Map<String, UseCaseCommand> commands) {
+        TreeMap<String, UseCaseCommand> lowerCased = new TreeMap<>();
+        for (Map.Entry<String, UseCaseCommand> entry : commands.entrySet()) {
+            if (lowerCased.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue()) != null)
+                throw new IllegalArgumentException("commands differing only by case: " + entry.getKey());
+        }
+
+        List<Map.Entry<String, UseCaseCommand>> entries = new ArrayList<>(lowerCased.entrySet());
+        this.root = entries.isEmpty() ? new Node(new char[0], new Node[0], null) : build(entries, 0, entries.size(), 0);
+    }
+
+    /**
+     * @param entries sorted by key
+     * @param from    first entry sharing the first 'depth' chars
+     * @param to      last entry sharing the first 'depth' chars (excluded)
+     * @param depth   chars already read
+     */
+    private static Node build(List<Map.Entry<String, UseCaseCommand>> entries, int from, int to, int depth) {
+        UseCaseCommand command = null;
+        if (entries.get(from).getKey().length() == depth)
+            command = entries.get(from++).getValue();
+
+        char[] keys = new char[to - from];
+        Node[] children = new Node[to - from];
+        int size = 0;
+
+        while (from < to) {
+            char c = entries.get(from).getKey().charAt(depth);
+            int end = from;
+            while (end < to && entries.get(end).getKey().charAt(depth) == c)
+                end++;
+
+            keys[size] = c;
+            children[size] = build(entries, from, end, depth + 1);
+            size++;
+            from = end;
+        }
+
+        return new Node(Arrays.copyOf(keys, size), Arrays.copyOf(children, size), command);
+    }
+
+    /**
+     * @param text        'command[@botUsername][ arguments]'
+     * @param from        index of the first char of the command
+     * @param botUsername username which can follow the command
+     * @return the UseCaseCommand, null if not registered or addressed to another bot
+     */
+    UseCaseCommand find(String text, int from, String botUsername) {
+        Node node = root;
+
+        int i = from;
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == ARGUMENTS || c == USERNAME)
+                break;
+
+            node = node.child(Character.toLowerCase(c));
+            if (node == null)
+                return null;
+        }
+
+        if (i < text.length() && text.charAt(i) == USERNAME) {
+            int end = text.indexOf(ARGUMENTS, i);
+            int length = (end < 0 ? text.length() : end) - i - 1;
+
+            if (length != botUsername.length() || !text.regionMatches(true, i + 1, botUsername, 0, length))
+                return null;
+        }
+
+        return node.command;
+    }
+
+    /**
+     * @param text 'command[@botUsername][ arguments]'
+     * @param from index of the first char of the command
+     * @return arguments, null if there aren't
+     */
+    static String arguments(String text, int from) {
+        int i = text.indexOf(ARGUMENTS, from);
+        return i < 0 ? null : text.substring(i + 1);
+    }
+
+    private static final class Node {
+        private final char[] keys;
+        private final Node[] children;
+        private final UseCaseCommand command;
+
+        private Node(char[] keys, Node[] children, UseCaseCommand command) {
+            this.keys = keys;
+            this.children = children;
+            this.command = command;
+        }
+
+        private Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+}
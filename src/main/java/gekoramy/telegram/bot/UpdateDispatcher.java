@@ -0,0 +1,147 @@
+package gekoramy.telegram.bot;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Handles the updates on a set of serial lanes:
+ * all the updates of the same chat go to the same lane, so they're handled in order,
+ * while updates of different chats can be handled in parallel
+ * <p>
+ * Each lane holds at most 'capacity' updates: once full, dispatch(...) blocks the caller
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class UpdateDispatcher {
+
+    private final Lane[] lanes;
+    private final Consumer<Exception> onFailure;
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    /**
+     * @param lanes     threads handling the updates
+     * @param capacity  max updates waiting in each lane
+     * @param onFailure called when a handler throws
+     */
+    UpdateDispatcher(int lanes, int capacity, Consumer<Exception> onFailure) {
+        if (lanes < 1 || capacity < 1)
+            throw new IllegalArgumentException("lanes and capacity must be positive");
+
+        this.lanes = new Lane[lanes];
+        this.onFailure = onFailure;
+
+        for (int i = 0; i < lanes; i++) {
+            this.lanes[i] = new Lane(capacity);
+            this.lanes[i].setName("UpdateDispatcher-" + i);
+            this.lanes[i].setDaemon(true);
+            this.lanes[i].start();
+        }
+    }
+
+    /**
+     * @param chatId  chat of the update
+     * @param handler handles the update
+     * @throws InterruptedException interrupted while waiting for room in the lane
+     */
+    void dispatch(long chatId, Runnable handler) throws InterruptedException {
+        BlockingQueue<Runnable> queue = lanes[lane(chatId)].queue;
+
+        if (!queue.offer(handler)) {
+            blocked.increment();
+            queue.put(handler);
+        }
+
+        dispatched.increment();
+        int depth = queue.size();
+        maxQueueDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    void shutdown() {
+        for (Lane lane : lanes)
+            lane.interrupt();
+    }
+
+    private int lane(long chatId) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % lanes.length);
+    }
+
+    public int getLanes() {
+        return lanes.length;
+    }
+
+    /**
+     * @return updates waiting in all the lanes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Lane lane : lanes)
+            depth += lane.queue.size();
+        return depth;
+    }
+
+    /**
+     * @param lane lane index
+     * @return updates waiting in the lane
+     */
+    public int getQueueDepth(int lane) {
+        return lanes[lane].queue.size();
+    }
+
+    /**
+     * @return max updates seen waiting in a single lane
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getDispatched() {
+        return dispatched.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    /**
+     * @return times the caller had to wait for room in a full lane
+     */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    private final class Lane extends Thread {
+        private final BlockingQueue<Runnable> queue;
+
+        private Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                Runnable handler;
+                try {
+                    handler = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                try {
+                    handler.run();
+                } catch (Exception e) {
+                    onFailure.accept(e);
+                } finally {
+                    completed.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package gekoramy.telegram.bot;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONObject;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Long polling in stages, so that fetching, decoding and handling the updates overlap:
+ * - the fetcher thread asks the next batch once the ring drains down to the low watermark,
+ * and splits the response in the raw JSON of every update, reading only its update_id
+ * - a pool of decoders turns every raw JSON in an Update, in parallel
+ * - the drainer thread takes the updates from the ring, in order, and gives them to the UseCaseBot
+ * <p>
+ * An update is confirmed to Telegram (offset) only once it and all the previous ones are handled,
+ * so the updates not handled when the process stops are received again.
+ * The offset reaches Telegram with the next getUpdates: on shutdown a last one, not waiting for updates,
+ * confirms the ones handled since the last fetch.
+ * Since every getUpdates asks from the first update not handled, the ones already in the ring are skipped:
+ * the prefetch is bounded by MAX_BATCH updates ahead of the last one handled,
+ * and waiting for the low watermark (half a batch) keeps at least half of every batch new.
+ * If a batch brings nothing new, the next one waits for the ring to be empty, so that it's a long polling again
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class UpdatePipeline {
+
+    private static final int MAX_BATCH = 100;
+    private static final int POLLING_TIMEOUT = 50;
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+    private static final long SHUTDOWN_WAIT = TimeUnit.SECONDS.toMillis(5);
+    private static final AtomicInteger PIPELINES = new AtomicInteger();
+
+    private final UseCaseBot bot;
+    private final Consumer<Exception> onFailure;
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final JsonFactory jsonFactory = objectMapper.getFactory();
+    private final String url;
+    private final RequestConfig requestConfig;
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService decoders;
+    private final Thread fetcher;
+    private final Thread drainer;
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder malformed = new LongAdder();
+
+    // ring, guarded by this: cursor <= head <= tail, tail - cursor <= capacity
+    private final long[] ids;
+    private final CompletableFuture<?>[] updates;
+    private final boolean[] done;
+    private final int batch;
+    private final int lowWatermark;
+    private long cursor;                        // position of the first update not handled
+    private long head;                          // position of the next update to drain
+    private long tail;                          // position of the next update to publish
+    private long lastFetched;                   // update_id of the last update published
+    private long committed;                     // update_id of the last update handled, with all the previous ones
+
+    /**
+     * Nothing is fetched until started
+     *
+     * @param bot       handles the updates
+     * @param capacity  max updates fetched and not yet handled
+     * @param decoders  threads decoding the updates
+     * @param onFailure called on fetch and decode failures
+     */
+    UpdatePipeline(UseCaseBot bot, int capacity, int decoders, Consumer<Exception> onFailure) {
+        this(bot, bot.getOptions().getBaseUrl() + bot.getBotToken(), bot.getOptions().getRequestConfig(), capacity, decoders, onFailure);
+    }
+
+    /**
+     * @param botUrl base url of the methods of the bot
+     * @param base   config of the requests, null for the default one
+     */
+    UpdatePipeline(UseCaseBot bot, String botUrl, RequestConfig base, int capacity, int decoders, Consumer<Exception> onFailure) {
+        if (capacity < 1 || decoders < 1)
+            throw new IllegalArgumentException("capacity and decoders must be positive");
+
+        this.bot = bot;
+        this.onFailure = onFailure;
+        this.url = botUrl + "/getUpdates";
+        this.ids = new long[capacity];
+        this.updates = new CompletableFuture<?>[capacity];
+        this.done = new boolean[capacity];
+        this.batch = Math.min(MAX_BATCH, capacity);
+        this.lowWatermark = batch / 2;
+
+        int socketTimeout = (int) TimeUnit.SECONDS.toMillis(POLLING_TIMEOUT + 15);
+        this.requestConfig = (base == null ? RequestConfig.custom() : RequestConfig.copy(base)).setSocketTimeout(socketTimeout).build();
+        this.httpClient = HttpClientBuilder.create().build();
+
+        int id = PIPELINES.incrementAndGet();
+        AtomicInteger decoderIds = new AtomicInteger();
+        this.decoders = Executors.newFixedThreadPool(decoders, r -> {
+            Thread thread = new Thread(r, "UpdatePipeline-" + id + "-decoder-" + decoderIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.fetcher = new Thread(this::fetch, "UpdatePipeline-" + id + "-fetcher");
+        this.drainer = new Thread(this::drain, "UpdatePipeline-" + id + "-drainer");
+        this.fetcher.setDaemon(true);
+        this.drainer.setDaemon(true);
+    }
+
+    void start() {
+        fetcher.start();
+        drainer.start();
+    }
+
+    /**
+     * Stops draining, confirms the updates handled so far, then stops fetching:
+     * the updates not handled yet aren't confirmed
+     */
+    void shutdown() {
+        drainer.interrupt();
+        try {
+            drainer.join(SHUTDOWN_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        fetcher.interrupt();
+        decoders.shutdownNow();
+
+        long offset;
+        synchronized (this) {
+            offset = committed + 1;
+        }
+
+        try {
+            // nothing handled otherwise
+            if (offset > 1)
+                getUpdates(offset, 1, 0);
+        } catch (IOException | URISyntaxException e) {
+            onFailure.accept(e);
+        }
+
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            onFailure.accept(e);
+        }
+    }
+
+    /**
+     * @return updates fetched and not yet handled
+     */
+    public synchronized int getQueueDepth() {
+        return (int) (tail - cursor);
+    }
+
+    /**
+     * @return update_id of the last update confirmed to Telegram, with all the previous ones
+     */
+    public synchronized long getCommitted() {
+        return committed;
+    }
+
+    public long getFetches() {
+        return fetches.sum();
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return updates received again because still in the ring
+     */
+    public long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return updates skipped because not decodable
+     */
+    public long getMalformed() {
+        return malformed.sum();
+    }
+
+    private void fetch() {
+        long backoff = 0;
+        boolean stale = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long offset;
+                synchronized (this) {
+                    // after a batch without new updates, an empty ring: Telegram holds the request until there are
+                    long watermark = stale ? 0 : lowWatermark;
+                    while (tail - cursor > watermark)
+                        wait();
+
+                    // the updates still in the ring come first
+                    offset = committed + 1;
+                }
+
+                byte[] body = getUpdates(offset, batch, POLLING_TIMEOUT);
+                fetches.increment();
+                stale = publish(body) == 0;
+                backoff = 0;
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException | URISyntaxException | TelegramApiRequestException | RuntimeException e) {
+                onFailure.accept(e);
+
+                backoff = Math.min(MAX_BACKOFF, Math.max(500, backoff * 2));
+                try {
+                    TimeUnit.MILLISECONDS.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param timeout seconds Telegram waits for an update, if there are none
+     */
+    private byte[] getUpdates(long offset, int limit, int timeout) throws IOException, URISyntaxException {
+        HttpGet httpGet = new HttpGet(new URIBuilder(url)
+                .addParameter("offset", String.valueOf(offset))
+                .addParameter("limit", String.valueOf(limit))
+                .addParameter("timeout", String.valueOf(timeout))
+                .build());
+        httpGet.setConfig(requestConfig);
+
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            return EntityUtils.toByteArray(response.getEntity());
+        }
+    }
+
+    /**
+     * Splits the response in updates, without decoding them, and publishes the new ones in the ring
+     *
+     * @return updates published
+     */
+    int publish(byte[] body) throws IOException, TelegramApiRequestException {
+        int published = 0;
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+                throw new IOException("Unexpected getUpdates response");
+
+            boolean ok = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+
+                if ("ok".equals(field)) {
+                    ok = value == JsonToken.VALUE_TRUE;
+                } else if ("result".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT)
+                        published += publish(body, parser);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (!ok)
+                throw new TelegramApiRequestException("Error getting updates", new JSONObject(new String(body, StandardCharsets.UTF_8)));
+        }
+
+        return published;
+    }
+
+    /**
+     * @param parser on the START_OBJECT of an update
+     * @return 1 if published, 0 if already in the ring or the ring is full
+     */
+    private int publish(byte[] body, JsonParser parser) throws IOException {
+        int start = (int) parser.getTokenLocation().getByteOffset();
+        long updateId = -1;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+
+            if ("update_id".equals(field))
+                updateId = parser.getLongValue();
+            else
+                parser.skipChildren();
+        }
+
+        int end = (int) parser.getCurrentLocation().getByteOffset();
+        received.increment();
+
+        CompletableFuture<Update> update;
+        synchronized (this) {
+            if (updateId <= lastFetched) {
+                duplicates.increment();
+                return 0;
+            }
+
+            // received again by the next getUpdates
+            if (tail - cursor >= ids.length)
+                return 0;
+
+            lastFetched = updateId;
+            update = CompletableFuture.supplyAsync(() -> decode(body, start, end), decoders);
+
+            int slot = (int) (tail % ids.length);
+            ids[slot] = updateId;
+            updates[slot] = update;
+            tail++;
+            notifyAll();
+        }
+
+        return 1;
+    }
+
+    private Update decode(byte[] body, int start, int end) {
+        try {
+            return objectMapper.readValue(body, start, end - start, Update.class);
+        } catch (IOException e) {
+            malformed.increment();
+            onFailure.accept(e);
+            return null;
+        }
+    }
+
+    private void drain() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                long position = take();
+                Update update = get(position);
+
+                if (update == null)
+                    handled(position);
+                else
+                    bot.receive(update, () -> handled(position));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return position of the next update to drain, in order
+     */
+    synchronized long take() throws InterruptedException {
+        while (head == tail)
+            wait();
+
+        return head++;
+    }
+
+    /**
+     * @return the update taken, null if not decodable
+     */
+    Update get(long position) throws InterruptedException {
+        CompletableFuture<?> future;
+        synchronized (this) {
+            future = updates[(int) (position % ids.length)];
+        }
+
+        try {
+            return (Update) future.get();
+        } catch (ExecutionException e) {
+            malformed.increment();
+            onFailure.accept(e);
+            return null;
+        }
+    }
+
+    /**
+     * Moves the cursor forward, over the updates handled without holes
+     * The fetcher is woken only once the ring drains down to its watermark
+     */
+    synchronized void handled(long position) {
+        done[(int) (position % ids.length)] = true;
+
+        long before = tail - cursor;
+        while (cursor < head && done[(int) (cursor % ids.length)]) {
+            int slot = (int) (cursor % ids.length);
+            done[slot] = false;
+            updates[slot] = null;
+            committed = ids[slot];
+            cursor++;
+        }
+
+        long after = tail - cursor;
+        if ((before > lowWatermark && after <= lowWatermark) || (before > 0 && after == 0))
+            notifyAll();
+    }
+}
@@ -2,14 +2,20 @@ package gekoramy.telegram.bot;
 
 import gekoramy.telegram.bot.model.Monitor;
 import gekoramy.telegram.bot.timed.Chats;
+import gekoramy.telegram.bot.timed.InlineReply;
 import gekoramy.telegram.bot.timed.TimedTelegramLongPollingBot;
 import gekoramy.telegram.bot.util.UselessMonitor;
 import gekoramy.telegram.bot.exception.NotHandledCommandException;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
 import org.telegram.telegrambots.api.objects.CallbackQuery;
 import org.telegram.telegrambots.api.objects.Message;
 import org.telegram.telegrambots.api.objects.Update;
 import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Handle all the bot updates, which could be:
  * - Messages
@@ -17,6 +23,8 @@ import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
  * - InlineQuery
  * <p>
  * It understand which type of update is and gives it to the commandRegistry
+ * <p>
+ * The updates are received through long polling, or through a webhook (see WebhookServer)
  *
  * @author Luca Mosetti
  * @since 2017
@@ -26,6 +34,8 @@ public abstract class UseCaseBot extends TimedTelegramLongPollingBot {
     private final String botToken;
     private final CommandRegistry commandRegistry;
     private final Monitor monitor;
+    private volatile UpdateDispatcher updateDispatcher;
+    private UpdatePipeline updatePipeline;
 
     /**
      * Here should be registered all the UseCaseCommand
@@ -36,18 +46,99 @@ public abstract class UseCaseBot extends TimedTelegramLongPollingBot {
      * @param monitor      monitor / analyzer of the traffic
      */
     protected UseCaseBot(String botName, String botToken, long msgPerMinute, Monitor monitor) {
-        super(msgPerMinute);
+        this(botName, botToken, msgPerMinute, DEFAULT_SENDER_THREADS, monitor);
+    }
+
+    /**
+     * Here should be registered all the UseCaseCommand
+     *
+     * @param botName       bot's name
+     * @param botToken      bot's token
+     * @param msgPerMinute  max messages per minute
+     * @param senderThreads workers sending the messages concurrently
+     * @param monitor       monitor / analyzer of the traffic
+     */
+    protected UseCaseBot(String botName, String botToken, long msgPerMinute, int senderThreads, Monitor monitor) {
+        this(botName, botToken, msgPerMinute, senderThreads, new Chats(), monitor);
+    }
+
+    /**
+     * Here should be registered all the UseCaseCommand
+     *
+     * @param botName       bot's name
+     * @param botToken      bot's token
+     * @param msgPerMinute  max messages per minute
+     * @param senderThreads workers sending the messages concurrently
+     * @param chats         state of the chats, bounded in size
+     * @param monitor       monitor / analyzer of the traffic
+     */
+    protected UseCaseBot(String botName, String botToken, long msgPerMinute, int senderThreads, Chats chats, Monitor monitor) {
+        super(msgPerMinute, senderThreads, chats);
 
         this.botName = botName;
         this.botToken = botToken;
         this.monitor = monitor == null ? new UselessMonitor() : monitor;
-        this.commandRegistry = new CommandRegistry(this.botName, this.monitor);
+        this.commandRegistry = new CommandRegistry(this.botName, this.monitor, getMetrics());
     }
 
     protected CommandRegistry getCommandRegistry() {
         return this.commandRegistry;
     }
 
+    /**
+     * Optional: handles the updates of different chats in parallel,
+     * keeping in order the updates of the same chat
+     * Once 'capacity' updates of a lane are waiting, the long-polling thread waits too
+     * To be called once, before the bot receives updates: swapping lanes would handle updates of a chat on two threads
+     *
+     * @param lanes    threads handling the updates
+     * @param capacity max updates waiting in each lane
+     */
+    protected void setParallelDispatch(int lanes, int capacity) {
+        if (this.updateDispatcher != null)
+            throw new IllegalStateException("parallel dispatch already set");
+
+        UpdateDispatcher dispatcher = new UpdateDispatcher(lanes, capacity, this::onFailure);
+        this.updateDispatcher = dispatcher;
+
+        getMetrics().gauge("bot_dispatcher_depth", "Updates waiting in the dispatcher lanes", dispatcher::getQueueDepth);
+        getMetrics().counter("bot_dispatcher_blocked_total", "Times the intake waited for room in a full lane", dispatcher::getBlocked);
+    }
+
+    /**
+     * Optional: receives the updates through an UpdatePipeline, in place of the long polling of TelegramBotsApi
+     * (so the bot mustn't be registered there): fetching, decoding and handling overlap,
+     * and an update is confirmed to Telegram only once handled
+     *
+     * @param capacity max updates fetched and not yet handled
+     * @param decoders threads decoding the updates
+     */
+    protected void startUpdatePipeline(int capacity, int decoders) {
+        if (this.updatePipeline != null)
+            throw new IllegalStateException("update pipeline already started");
+
+        this.updatePipeline = new UpdatePipeline(this, capacity, decoders, this::onFailure);
+        this.updatePipeline.start();
+
+        UpdatePipeline pipeline = this.updatePipeline;
+        getMetrics().gauge("bot_pipeline_depth", "Updates fetched and not yet handled", pipeline::getQueueDepth);
+        getMetrics().counter("bot_pipeline_duplicates_total", "Updates received again because still in the ring", pipeline::getDuplicates);
+    }
+
+    /**
+     * @return the UpdatePipeline, null if the updates are received otherwise
+     */
+    public UpdatePipeline getUpdatePipeline() {
+        return updatePipeline;
+    }
+
+    /**
+     * @return the UpdateDispatcher, null if the updates are handled by the long-polling thread
+     */
+    public UpdateDispatcher getUpdateDispatcher() {
+        return updateDispatcher;
+    }
+
     /**
      * @param update update received, which could be:
      *               - Messages
@@ -56,6 +147,111 @@ public abstract class UseCaseBot extends TimedTelegramLongPollingBot {
      */
     @Override
     public void onUpdateReceived(Update update) {
+        UpdateDispatcher dispatcher = updateDispatcher;
+        if (dispatcher == null) {
+            handleUpdate(update);
+            return;
+        }
+
+        try {
+            dispatcher.dispatch(getChatId(update), () -> handleUpdate(update));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onClosing() {
+        if (updatePipeline != null)
+            updatePipeline.shutdown();
+
+        UpdateDispatcher dispatcher = updateDispatcher;
+        if (dispatcher != null)
+            dispatcher.shutdown();
+
+        super.onClosing();
+
+        // e.g. AsyncMonitor, delivering the events left
+        if (monitor instanceof Closeable) {
+            try {
+                ((Closeable) monitor).close();
+            } catch (IOException e) {
+                onFailure(e);
+            }
+        }
+    }
+
+    /**
+     * Handles an update received through a webhook, as onUpdateReceived(...) does
+     * The first answer requested without waiting for its result, within timeout, is returned instead of being queued
+     *
+     * @param update  update received
+     * @param timeout max time to wait for the update to be handled, if dispatched to another thread
+     * @return the answer to send as response of the webhook, null if none
+     */
+    public BotApiMethod<?> onWebhookUpdateReceived(Update update, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        InlineReply reply = new InlineReply();
+        Runnable handler = replyingInline(reply, () -> {
+            try {
+                handleUpdate(update);
+            } catch (RuntimeException e) {
+                // answered anyway: Telegram would send the same update again
+                onFailure(e);
+            }
+        });
+
+        UpdateDispatcher dispatcher = updateDispatcher;
+        if (dispatcher == null)
+            handler.run();
+        else
+            dispatcher.dispatch(getChatId(update), handler);
+
+        return reply.take(timeout, timeUnit);
+    }
+
+    /**
+     * Handles the update as onUpdateReceived(...) does
+     *
+     * @param handled called once the update is handled, even if the handler failed
+     */
+    void receive(Update update, Runnable handled) throws InterruptedException {
+        Runnable handler = () -> {
+            try {
+                handleUpdate(update);
+            } catch (RuntimeException e) {
+                onFailure(e);
+            } finally {
+                handled.run();
+            }
+        };
+
+        UpdateDispatcher dispatcher = updateDispatcher;
+        if (dispatcher == null)
+            handler.run();
+        else
+            dispatcher.dispatch(getChatId(update), handler);
+    }
+
+    /**
+     * @param update update received
+     * @return the chat whose updates have to be handled in order
+     */
+    private static long getChatId(Update update) {
+        if (update.hasMessage())
+            return update.getMessage().getChatId();
+
+        if (update.hasCallbackQuery())
+            return update.getCallbackQuery().getMessage() != null
+                    ? update.getCallbackQuery().getMessage().getChatId()
+                    : update.getCallbackQuery().getFrom().getId();
+
+        if (update.hasInlineQuery())
+            return update.getInlineQuery().getFrom().getId();
+
+        return 0;
+    }
+
+    private void handleUpdate(Update update) {
         if (update.hasMessage()) {
             onMessageUpdate(update.getMessage());
         } else if (update.hasCallbackQuery()) {
@@ -91,7 +287,7 @@ public abstract class UseCaseBot extends TimedTelegramLongPollingBot {
             if (message.isCommand()) {
                 commandRegistry.respondCommand(this, message);
             } else {
-                commandRegistry.respondMessage(this, message, Chats.getCommand(message.getChatId()));
+                commandRegistry.respondMessage(this, message, getChats().getCommand(message.getChatId()));
             }
 
         } catch (NotHandledCommandException e) {
@@ -0,0 +1,216 @@
+package gekoramy.telegram.bot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.telegram.telegrambots.ApiConstants;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.api.objects.Update;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receives the updates of a UseCaseBot through a webhook, in place of long polling
+ * <p>
+ * The embedded server (JDK's NIO HttpServer) accepts the connections on a single selector thread,
+ * then a bounded pool of workers decodes every body as a stream, straight into an Update, and handles it.
+ * Once the pool and its queue are full the selector thread handles the request itself,
+ * so no more connections are accepted until there's room: Telegram retries later
+ * <p>
+ * The first answer requested without waiting for its result (e.g. AnswerCallbackQuery) is the response of the webhook,
+ * so it doesn't cost a request to Telegram
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class WebhookServer {
+
+    private static final long INLINE_REPLY_TIMEOUT = TimeUnit.SECONDS.toMillis(1);
+    private static final AtomicInteger WORKERS = new AtomicInteger();
+
+    private final UseCaseBot bot;
+    private final String path;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final LongAdder received = new LongAdder();
+    private final LongAdder repliedInline = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Plain http: TLS is left to a reverse proxy
+     */
+    public WebhookServer(UseCaseBot bot, InetSocketAddress address, int workers, int capacity) throws IOException {
+        this(bot, address, "/" + bot.getBotToken(), workers, capacity, null);
+    }
+
+    /**
+     * @param bot        handles the updates
+     * @param address    address to listen on
+     * @param path       path of the webhook, secret
+     * @param workers    threads decoding and handling the updates
+     * @param capacity   max requests waiting for a worker
+     * @param sslContext null for plain http
+     */
+    public WebhookServer(UseCaseBot bot, InetSocketAddress address, String path, int workers, int capacity, SSLContext sslContext) throws IOException {
+        if (workers < 1 || capacity < 1)
+            throw new IllegalArgumentException("workers and capacity must be positive");
+
+        this.bot = bot;
+        this.path = path;
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(capacity), r -> {
+            Thread thread = new Thread(r, "Webhook-" + WORKERS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        if (sslContext == null) {
+            this.server = HttpServer.create(address, 0);
+        } else {
+            HttpsServer https = HttpsServer.create(address, 0);
+            https.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+            this.server = https;
+        }
+
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(this.workers);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops receiving, then closes the bot
+     *
+     * @param delay max seconds to wait for the requests being handled
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        workers.shutdown();
+        bot.onClosing();
+    }
+
+    /**
+     * Tells Telegram to send the updates to the public url of this server
+     *
+     * @param url            public url, ending with the path of the webhook
+     * @param maxConnections max concurrent requests of Telegram
+     */
+    public void register(String url, int maxConnections) throws TelegramApiRequestException {
+        try (CloseableHttpClient httpclient = HttpClientBuilder.create().build()) {
+            HttpGet httpGet = new HttpGet(new URIBuilder(bot.getOptions().getBaseUrl() + bot.getBotToken() + "/" + SetWebhook.PATH)
+                    .addParameter(SetWebhook.URL_FIELD, url)
+                    .addParameter(SetWebhook.MAXCONNECTIONS_FIELD, String.valueOf(maxConnections))
+                    .build());
+            httpGet.setConfig(bot.getOptions().getRequestConfig());
+            try (CloseableHttpResponse response = httpclient.execute(httpGet)) {
+                HttpEntity ht = response.getEntity();
+                JSONObject jsonObject = new JSONObject(EntityUtils.toString(ht, StandardCharsets.UTF_8));
+                if (!jsonObject.getBoolean(ApiConstants.RESPONSE_FIELD_OK)) {
+                    throw new TelegramApiRequestException("Error setting webhook", jsonObject);
+                }
+            }
+        } catch (JSONException e) {
+            throw new TelegramApiRequestException("Error deserializing setWebhook method response", e);
+        } catch (IOException | URISyntaxException e) {
+            throw new TelegramApiRequestException("Error executing setWebook method", e);
+        }
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return updates whose answer has been the response of the webhook
+     */
+    public long getRepliedInline() {
+        return repliedInline.sum();
+    }
+
+    /**
+     * @return requests which weren't a valid update
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * @return requests waiting for a worker
+     */
+    public int getQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                rejected.increment();
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                update = objectMapper.readValue(body, Update.class);
+            } catch (IOException e) {
+                rejected.increment();
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            received.increment();
+            BotApiMethod<?> reply = null;
+            try {
+                reply = bot.onWebhookUpdateReceived(update, INLINE_REPLY_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (reply == null) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            repliedInline.increment();
+            byte[] json = objectMapper.writeValueAsBytes(reply);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, json.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(json);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package gekoramy.telegram.bot.metrics;
+
+import gekoramy.telegram.bot.util.Histogram;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics, each one split by labels, written in the Prometheus text format
+ * - counters are LongAdders, or counts kept elsewhere read when written
+ * - histograms are lock-free Histograms, written as summaries (quantiles, sum, count) plus a _max gauge
+ * - gauges are read when written
+ * <p>
+ * Metrics are created once and kept by the caller: the hot paths never look them up
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param name   counter name, ending with _total
+     * @param help   description
+     * @param labels label names and values, alternated
+     * @return the counter, created on first call
+     */
+    public LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) family(name, help, "counter", 1).metrics.computeIfAbsent(labels(labels), l -> new LongAdder());
+    }
+
+    /**
+     * @param name    counter name, ending with _total
+     * @param help    description
+     * @param counter read on every write, it must never decrease
+     * @param labels  label names and values, alternated
+     */
+    public void counter(String name, String help, LongSupplier counter, String... labels) {
+        family(name, help, "counter", 1).metrics.put(labels(labels), counter);
+    }
+
+    /**
+     * @param name   histogram name, ending with its unit
+     * @param help   description
+     * @param scale  unit of the name for every unit recorded (e.g. 1e-6 for micros recorded, seconds written)
+     * @param labels label names and values, alternated
+     * @return the histogram, created on first call
+     */
+    public Histogram histogram(String name, String help, double scale, String... labels) {
+        return (Histogram) family(name, help, "summary", scale).metrics.computeIfAbsent(labels(labels), l -> new Histogram());
+    }
+
+    /**
+     * @param name   gauge name
+     * @param help   description
+     * @param gauge  read on every write
+     * @param labels label names and values, alternated
+     */
+    public void gauge(String name, String help, DoubleSupplier gauge, String... labels) {
+        family(name, help, "gauge", 1).metrics.put(labels(labels), gauge);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format (version 0.0.4)
+     */
+    public void write(Writer writer) throws IOException {
+        StringBuilder out = new StringBuilder(4096);
+
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+
+                if (value instanceof LongAdder) {
+                    sample(out, name, labels, null, ((LongAdder) value).sum());
+                } else if (value instanceof LongSupplier) {
+                    sample(out, name, labels, null, ((LongSupplier) value).getAsLong());
+                } else if (value instanceof DoubleSupplier) {
+                    sample(out, name, labels, null, ((DoubleSupplier) value).getAsDouble());
+                } else {
+                    Histogram histogram = (Histogram) value;
+                    for (double quantile : QUANTILES)
+                        sample(out, name, labels, "quantile=\"" + quantile + "\"", histogram.getPercentile(quantile * 100) * family.scale);
+
+                    sample(out, name + "_sum", labels, null, histogram.getSum() * family.scale);
+                    sample(out, name + "_count", labels, null, histogram.getCount());
+                }
+            }
+
+            // the max of a summary isn't part of it
+            if ("summary".equals(family.type)) {
+                out.append("# TYPE ").append(name).append("_max gauge\n");
+                for (Map.Entry<String, Object> metric : family.metrics.entrySet())
+                    sample(out, name + "_max", metric.getKey(), null, ((Histogram) metric.getValue()).getMax() * family.scale);
+            }
+        }
+
+        writer.write(out.toString());
+        writer.flush();
+    }
+
+    private Family family(String name, String help, String type, double scale) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type, scale));
+        if (!family.type.equals(type))
+            throw new IllegalArgumentException(name + " is already a " + family.type);
+
+        return family;
+    }
+
+    private static String labels(String... labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("labels must be names and values, alternated");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                sb.append(',');
+
+            sb.append(labels[i]).append("=\"");
+            String value = labels[i + 1];
+            for (int c = 0; c < value.length(); c++) {
+                char ch = value.charAt(c);
+                if (ch == '\\' || ch == '"')
+                    sb.append('\\').append(ch);
+                else if (ch == '\n')
+                    sb.append("\\n");
+                else
+                    sb.append(ch);
+            }
+            sb.append('"');
+        }
+
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String extra, double value) {
+        out.append(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.append('{').append(labels);
+            if (extra != null)
+                out.append(labels.isEmpty() ? "" : ",").append(extra);
+            out.append('}');
+        }
+
+        out.append(' ');
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15)
+            out.append((long) value);
+        else
+            out.append(value);
+        out.append('\n');
+    }
+
+    private static final class Family {
+        private final String help;
+        private final String type;
+        private final double scale;
+        private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+        private Family(String help, String type, double scale) {
+            this.help = help;
+            this.type = type;
+            this.scale = scale;
+        }
+    }
+}
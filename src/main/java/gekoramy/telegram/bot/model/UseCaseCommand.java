@@ -1,6 +1,7 @@
 package gekoramy.telegram.bot.model;
 
 import gekoramy.telegram.bot.model.query.Query;
+import gekoramy.telegram.bot.model.query.QuerySchema;
 import gekoramy.telegram.bot.responder.CallbackQueryResponder;
 import gekoramy.telegram.bot.responder.InlineCallbackQueryResponder;
 import gekoramy.telegram.bot.responder.InlineQueryResponder;
@@ -53,6 +54,15 @@ public class UseCaseCommand {
     public void init() {
     }
 
+    /**
+     * Optional: keys of the callback_data packed by PackedQueryBuilder
+     *
+     * @return the schema, null if this UseCaseCommand doesn't pack its callback_data
+     */
+    public QuerySchema getQuerySchema() {
+        return null;
+    }
+
     /**
      * Responds to an incomplete command
      * /command [null / empty]
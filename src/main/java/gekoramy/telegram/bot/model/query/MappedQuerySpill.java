@@ -0,0 +1,81 @@
+package gekoramy.telegram.bot.model.query;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ring of records in a memory-mapped file: token, expiration, length, UTF-8 callback_data
+ * Once the file is full the oldest records are overwritten,
+ * so a record is read only if the token written at its offset still matches
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class MappedQuerySpill {
+
+    private static final int HEADER = Long.BYTES + Long.BYTES + Short.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final Map<Long, Integer> offsets;
+    private int position = 0;
+
+    MappedQuerySpill(File file, int bytes) throws IOException {
+        if (bytes < 1024)
+            throw new IllegalArgumentException("spill file cannot be smaller than 1024 bytes");
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+
+        // a record takes at least HEADER bytes: older offsets are surely overwritten
+        final int maxOffsets = bytes / HEADER;
+        this.offsets = new LinkedHashMap<Long, Integer>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Integer> eldest) {
+                return size() > maxOffsets;
+            }
+        };
+    }
+
+    synchronized void put(long token, String data, long expiration) {
+        byte[] utf8 = data.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER + utf8.length;
+        if (utf8.length > Short.MAX_VALUE || length > buffer.capacity())
+            return;
+
+        if (position + length > buffer.capacity())
+            position = 0;
+
+        buffer.putLong(position, token);
+        buffer.putLong(position + Long.BYTES, expiration);
+        buffer.putShort(position + 2 * Long.BYTES, (short) utf8.length);
+        for (int i = 0; i < utf8.length; i++)
+            buffer.put(position + HEADER + i, utf8[i]);
+
+        offsets.put(token, position);
+        position += length;
+    }
+
+    synchronized String get(long token, long now) {
+        Integer offset = offsets.get(token);
+        if (offset == null || buffer.getLong(offset) != token)
+            return null;
+
+        if (buffer.getLong(offset + Long.BYTES) < now) {
+            offsets.remove(token);
+            return null;
+        }
+
+        byte[] utf8 = new byte[buffer.getShort(offset + 2 * Long.BYTES)];
+        for (int i = 0; i < utf8.length; i++)
+            utf8[i] = buffer.get(offset + HEADER + i);
+
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+package gekoramy.telegram.bot.model.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Builds a packed callback_data (see PackedQueryCodec):
+ * keys are written as ids of the QuerySchema and numbers as varints,
+ * so much more state fits in the 64 bytes than with 'key:value' entries
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class PackedQueryBuilder implements Regex {
+    private static final int MAX_BYTES = 64;
+
+    // base64 writes 4 chars every 3 bytes
+    private static final int MAX_PACKED_BYTES = (MAX_BYTES - PACKED.length()) * 3 / 4;
+
+    private final QuerySchema schema;
+    private final byte[] bytes = new byte[MAX_PACKED_BYTES + 10];
+    private int length = 0;
+
+    /**
+     * @param schema schema of a registered UseCaseCommand
+     */
+    public PackedQueryBuilder(QuerySchema schema) {
+        if (schema.getCommandId() < 0)
+            throw new IllegalStateException("QuerySchema not registered yet");
+
+        this.schema = schema;
+        writeVarint(schema.getCommandId());
+    }
+
+    protected PackedQueryBuilder put(String key, long value) {
+        int mark = length;
+        writeVarint((long) schema.getKeyId(key) << 1 | 1);
+        writeVarint((value << 1) ^ (value >> 63));
+        return check(mark, key);
+    }
+
+    protected PackedQueryBuilder put(String key, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+
+        int mark = length;
+        writeVarint((long) schema.getKeyId(key) << 1);
+        writeVarint(utf8.length);
+        if (length + utf8.length > MAX_PACKED_BYTES) {
+            length = mark;
+            throw tooLong(key);
+        }
+
+        System.arraycopy(utf8, 0, bytes, length, utf8.length);
+        length += utf8.length;
+        return this;
+    }
+
+    public String build() {
+        byte[] packed = new byte[length];
+        System.arraycopy(bytes, 0, packed, 0, length);
+        return PACKED + Base64.getUrlEncoder().withoutPadding().encodeToString(packed);
+    }
+
+    private PackedQueryBuilder check(int mark, String key) {
+        if (length > MAX_PACKED_BYTES) {
+            length = mark;
+            throw tooLong(key);
+        }
+
+        return this;
+    }
+
+    private OutOfMemoryError tooLong(String key) {
+        return new OutOfMemoryError("callback_data cannot exceed " + MAX_BYTES + " bytes of memory, adding: " + key);
+    }
+
+    /**
+     * Writes at most 10 bytes, the ones beyond MAX_PACKED_BYTES are discarded by check(...)
+     */
+    private void writeVarint(long value) {
+        while (length < bytes.length) {
+            if ((value & ~0x7FL) == 0) {
+                bytes[length++] = (byte) value;
+                return;
+            }
+
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        length = bytes.length;
+    }
+}
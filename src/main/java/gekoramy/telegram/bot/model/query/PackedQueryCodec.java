@@ -0,0 +1,114 @@
+package gekoramy.telegram.bot.model.query;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Packed callback_data: PACKED + base64url(bytes), where bytes are
+ * - varint command id
+ * - for each entry: varint (key id << 1 | is number), then
+ * zigzag varint number, or varint length + UTF-8 string
+ * <p>
+ * The command id is the one declared by the QuerySchema, if any, otherwise it is derived from the hash of the command identifier,
+ * so it doesn't depend on the order of registration: the callback_data already sent keep decoding as the same command.
+ * Two commands with the same id are rejected, one of them has to declare its own
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class PackedQueryCodec implements Regex {
+
+    // command ids are written in at most 2 bytes
+    private static final int MAX_COMMAND_ID = 1 << 14;
+    private static final int DERIVED_IDS = MAX_COMMAND_ID - QuerySchema.MAX_DECLARED_ID;
+
+    private final Map<Integer, QuerySchema> schemas = new HashMap<>();
+
+    /**
+     * @param commandIdentifier command which uses the schema
+     * @param schema            keys of its packed callback_data
+     */
+    public void register(String commandIdentifier, QuerySchema schema) {
+        int commandId = schema.getDeclaredId();
+        if (commandId >= 0) {
+            QuerySchema other = schemas.get(commandId);
+            if (other != null)
+                throw new IllegalArgumentException("Packed command id " + commandId + " declared by both " + commandIdentifier + " and " + other.getCommandIdentifier());
+        } else {
+            commandId = derive(commandIdentifier);
+        }
+
+        schema.setCommand(commandIdentifier, commandId);
+        schemas.put(commandId, schema);
+    }
+
+    /**
+     * @return the id of the hash of commandIdentifier
+     */
+    private int derive(String commandIdentifier) {
+        int commandId = QuerySchema.MAX_DECLARED_ID + Math.floorMod(commandIdentifier.hashCode(), DERIVED_IDS);
+
+        QuerySchema other = schemas.get(commandId);
+        if (other != null)
+            throw new IllegalArgumentException("Packed command id " + commandId + " derived by both " + commandIdentifier + " and " + other.getCommandIdentifier()
+                    + ": declare an id for one of them with new QuerySchema(commandId, keys...)");
+
+        return commandId;
+    }
+
+    /**
+     * @param data callback_data starting with PACKED
+     * @return the Query, without entries if data cannot be decoded
+     */
+    Query decode(String data) {
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(data.substring(PACKED.length()));
+            int[] pos = {0};
+
+            QuerySchema schema = schemas.get((int) readVarint(bytes, pos));
+            if (schema == null)
+                return new Query(Collections.emptyMap());
+
+            Map<String, String> map = new HashMap<>();
+            map.put(COMMAND, schema.getCommandIdentifier());
+
+            while (pos[0] < bytes.length) {
+                long header = readVarint(bytes, pos);
+                String key = schema.getKey((int) (header >>> 1));
+
+                String value;
+                if ((header & 1) == 1) {
+                    long zigzag = readVarint(bytes, pos);
+                    value = Long.toString((zigzag >>> 1) ^ -(zigzag & 1));
+                } else {
+                    int length = (int) readVarint(bytes, pos);
+                    value = new String(bytes, pos[0], length, StandardCharsets.UTF_8);
+                    pos[0] += length;
+                }
+
+                // keys unknown to this version of the schema are skipped
+                if (key != null)
+                    map.put(key, value);
+            }
+
+            return new Query(map);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return new Query(Collections.emptyMap());
+        }
+    }
+
+    private static long readVarint(byte[] bytes, int[] pos) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = bytes[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+
+        throw new IllegalArgumentException("malformed varint");
+    }
+}
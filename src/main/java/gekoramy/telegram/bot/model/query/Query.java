@@ -1,27 +1,66 @@
 package gekoramy.telegram.bot.model.query;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * Standard CallbackQuery
  * In order to work properly, all the CallbackQueries must specify the command
+ * <p>
+ * A parsed Query is a view over the original callback_data:
+ * the values are extracted only when asked, the map only when getMap() is called
  *
  * @author Luca Mosetti
  * @since 2017
  */
 public class Query implements Regex {
 
+    private final String data;
+    private final int[] bounds;     // for each entry: start, TWO_DOTS index, end
+    private final int entries;
     private Map<String, String> map;
 
     public Query(Map<String, String> map) {
+        this.data = null;
+        this.bounds = null;
+        this.entries = 0;
         this.map = map;
     }
 
+    Query(String data, int[] bounds, int entries) {
+        this.data = data;
+        this.bounds = bounds;
+        this.entries = entries;
+    }
+
     protected String get(String key) {
-        return map.get(key);
+        if (map != null)
+            return map.get(key);
+
+        // the last entry wins, as it would in the map
+        for (int i = entries - 1; i >= 0; i--) {
+            int start = bounds[3 * i];
+            int twoDots = bounds[3 * i + 1];
+
+            if (twoDots - start == key.length() && data.startsWith(key, start))
+                return data.substring(twoDots + 1, bounds[3 * i + 2]);
+        }
+
+        return null;
     }
 
     public Map<String, String> getMap() {
+        if (map == null) {
+            Map<String, String> tmp = new HashMap<>();
+            for (int i = 0; i < entries; i++) {
+                tmp.put(
+                        data.substring(bounds[3 * i], bounds[3 * i + 1]),
+                        data.substring(bounds[3 * i + 1] + 1, bounds[3 * i + 2])
+                );
+            }
+            map = tmp;
+        }
+
         return map;
     }
 
@@ -4,6 +4,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
+ * If built with a QueryStore, the callback_data exceeding 64 bytes
+ * are kept by the store and replaced by a token
+ *
  * @author Luca Mosetti
  * @since 2017
  */
@@ -11,25 +14,68 @@ public class QueryBuilder implements Regex {
     private Map<String, String> map = new HashMap<>();
     private static final int MAX_BYTES = 64;
 
+    private final QueryStore store;
+
+    // UTF-8 bytes of the built callback_data
+    private int bytes = 0;
+
+    public QueryBuilder() {
+        this(null);
+    }
+
+    /**
+     * @param store keeps the callback_data exceeding 64 bytes, null to forbid them
+     */
+    public QueryBuilder(QueryStore store) {
+        this.store = store;
+    }
+
     protected QueryBuilder put(String key, String value) {
-        if (build().getBytes().length >= MAX_BYTES)
-            throw new OutOfMemoryError("callback_data cannot exceed " + MAX_BYTES + " bytes of memory");
+        int tmp = bytes + entryBytes(key, value);
+
+        String old = map.get(key);
+        if (old != null)
+            tmp -= entryBytes(key, old);
+
+        if (tmp >= MAX_BYTES && store == null)
+            throw new OutOfMemoryError("callback_data cannot exceed " + MAX_BYTES + " bytes of memory\n" + tmp + " Bytes : " + key + TWO_DOTS + value);
 
         map.put(key, value);
+        bytes = tmp;
         return this;
     }
 
     public String build() {
-        StringBuilder result = new StringBuilder();
+        StringBuilder result = new StringBuilder(bytes);
         for (Map.Entry<String, String> entry : map.entrySet()) {
             result.append(entry.getKey()).append(TWO_DOTS).append(entry.getValue()).append(REGEX);
         }
 
-        String tmp = result.toString();
+        return bytes >= MAX_BYTES ? store.put(result.toString()) : result.toString();
+    }
 
-        if (tmp.getBytes().length >= MAX_BYTES)
-            throw new OutOfMemoryError("callback_data cannot exceed " + MAX_BYTES + " bytes of memory\n" + tmp.getBytes().length + " Bytes : " + tmp);
+    /**
+     * @return UTF-8 bytes of 'key:value\n'
+     */
+    private static int entryBytes(String key, String value) {
+        return utf8Length(key) + utf8Length(value) + TWO_DOTS.length() + REGEX.length();
+    }
 
-        return tmp;
+    private static int utf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
     }
-}
\ No newline at end of file
+}
@@ -1,28 +1,74 @@
 package gekoramy.telegram.bot.model.query;
 
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * Standard QueryParser
+ * It reads the callback_data once, keeping only where each entry starts and ends
+ * The callback_data starting with PACKED are decoded by the PackedQueryCodec,
+ * the ones starting with STORED are first resolved by the QueryStore
  *
  * @author Luca Mosetti
  * @since 2017
  */
 public class QueryParser implements Regex {
 
-    public Query parse(String string) {
-        return new Query(extractMap(string));
+    private static final char ENTRY_END = REGEX.charAt(0);
+    private static final char KEY_END = TWO_DOTS.charAt(0);
+
+    private final PackedQueryCodec packedCodec;
+    private final QueryStore store;
+
+    public QueryParser() {
+        this(new PackedQueryCodec());
+    }
+
+    public QueryParser(PackedQueryCodec packedCodec) {
+        this(packedCodec, null);
+    }
+
+    /**
+     * @param packedCodec decodes the packed callback_data
+     * @param store       resolves the stored callback_data, null if not used
+     */
+    public QueryParser(PackedQueryCodec packedCodec, QueryStore store) {
+        this.packedCodec = packedCodec;
+        this.store = store;
     }
 
-    private Map<String, String> extractMap(String string) {
-        Map<String, String> map = new HashMap<>();
-        String[] parts = string.split(REGEX);
+    public Query parse(String string) {
+        if (string.startsWith(PACKED))
+            return packedCodec.decode(string);
+
+        if (string.startsWith(STORED)) {
+            String data = store != null ? store.get(string) : null;
+            // forgotten: a Query without entries, as an unknown command
+            string = data != null ? data : "";
+        }
+
+        // at most one entry every 2 chars ("k:" is the shortest one)
+        int[] bounds = new int[3 * (string.length() / 2 + 1)];
+        int entries = 0;
+
+        int start = 0;
+        int twoDots = -1;
+        for (int i = 0; i <= string.length(); i++) {
+            char c = i < string.length() ? string.charAt(i) : ENTRY_END;
+
+            if (c == KEY_END && twoDots < 0) {
+                twoDots = i;
+            } else if (c == ENTRY_END) {
+                // entries without TWO_DOTS are skipped
+                if (twoDots >= 0) {
+                    bounds[3 * entries] = start;
+                    bounds[3 * entries + 1] = twoDots;
+                    bounds[3 * entries + 2] = i;
+                    entries++;
+                }
 
-        for (String entry : parts) {
-            map.put((entry.split(TWO_DOTS)[0]), entry.split(TWO_DOTS)[1]);
+                start = i + 1;
+                twoDots = -1;
+            }
         }
 
-        return map;
+        return new Query(string, bounds, entries);
     }
 }
@@ -0,0 +1,93 @@
+package gekoramy.telegram.bot.model.query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keys which a UseCaseCommand puts in its packed callback_data
+ * Each key is written as its index, so new keys must be appended:
+ * removing or reordering them breaks the buttons already sent
+ * <p>
+ * The command id can be declared, so it never changes whatever the other commands are
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class QuerySchema {
+
+    /**
+     * Declared command ids are below this, the derived ones above
+     */
+    public static final int MAX_DECLARED_ID = 1024;
+
+    private final int declaredId;
+    private final String[] keys;
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    private String commandIdentifier;
+    private int commandId = -1;
+
+    /**
+     * The command id is derived from the command identifier
+     */
+    public QuerySchema(String... keys) {
+        this(-1, keys);
+    }
+
+    /**
+     * @param commandId stable id of the command, between 0 and MAX_DECLARED_ID (excluded), unique among the commands
+     */
+    public QuerySchema(int commandId, String... keys) {
+        if (commandId >= MAX_DECLARED_ID || commandId < -1)
+            throw new IllegalArgumentException("commandId must be between 0 and " + MAX_DECLARED_ID + " (excluded)");
+
+        this.declaredId = commandId;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null || ids.put(keys[i], i) != null)
+                throw new IllegalArgumentException("keys must be unique and not null");
+        }
+
+        this.keys = keys.clone();
+    }
+
+    /**
+     * @return id declared, -1 if it has to be derived
+     */
+    int getDeclaredId() {
+        return declaredId;
+    }
+
+    /**
+     * @return id of the command, -1 if not registered yet
+     */
+    int getCommandId() {
+        return commandId;
+    }
+
+    String getCommandIdentifier() {
+        return commandIdentifier;
+    }
+
+    void setCommand(String commandIdentifier, int commandId) {
+        if (this.commandIdentifier != null)
+            throw new IllegalStateException("QuerySchema already registered by " + this.commandIdentifier);
+
+        this.commandIdentifier = commandIdentifier;
+        this.commandId = commandId;
+    }
+
+    int getKeyId(String key) {
+        Integer id = ids.get(key);
+        if (id == null)
+            throw new IllegalArgumentException("key not defined in the QuerySchema: " + key);
+
+        return id;
+    }
+
+    /**
+     * @return the key, null if there is no key with this id
+     */
+    String getKey(int id) {
+        return id < keys.length ? keys[id] : null;
+    }
+}
@@ -0,0 +1,256 @@
+package gekoramy.telegram.bot.model.query;
+
+import javax.validation.constraints.NotNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the callback_data which don't fit in 64 bytes:
+ * only STORED + a random token is sent to Telegram
+ * <p>
+ * The store is split between shards, each one guarded by its own lock:
+ * a callback_data is forgotten once older than ttl,
+ * or when its shard exceeds its bytes and it is the least recently used one.
+ * In that case, if a spill file is given, it's moved there until overwritten
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class QueryStore implements Regex {
+
+    private static final int SHARDS = 16;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final long ttl;
+    private final MappedQuerySpill spill;
+    private final LongSupplier clock;
+    private final SecureRandom random = new SecureRandom();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxBytes max memory used by the stored callback_data (approximated)
+     * @param ttl      time after which a callback_data is forgotten
+     * @param timeUnit ttl unit
+     */
+    public QueryStore(long maxBytes, long ttl, @NotNull TimeUnit timeUnit) {
+        this(maxBytes, ttl, timeUnit, null, System::currentTimeMillis);
+    }
+
+    /**
+     * @param maxBytes   max memory used by the stored callback_data (approximated)
+     * @param ttl        time after which a callback_data is forgotten
+     * @param timeUnit   ttl unit
+     * @param spillFile  memory-mapped file where the evicted callback_data are moved
+     * @param spillBytes size of the spill file
+     * @throws IOException if the spill file cannot be mapped
+     */
+    public QueryStore(long maxBytes, long ttl, @NotNull TimeUnit timeUnit, @NotNull File spillFile, int spillBytes) throws IOException {
+        this(maxBytes, ttl, timeUnit, new MappedQuerySpill(spillFile, spillBytes), System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in ms
+     */
+    QueryStore(long maxBytes, long ttl, TimeUnit timeUnit, MappedQuerySpill spill, LongSupplier clock) {
+        if (maxBytes < SHARDS * ENTRY_OVERHEAD || ttl <= 0)
+            throw new IllegalArgumentException("maxBytes too small or ttl not positive");
+
+        this.ttl = timeUnit.toMillis(ttl);
+        this.spill = spill;
+        this.clock = clock;
+
+        for (int i = 0; i < SHARDS; i++)
+            shards[i] = new Shard(maxBytes / SHARDS);
+    }
+
+    /**
+     * @param data callback_data
+     * @return STORED + token, to be used as callback_data
+     */
+    public String put(String data) {
+        long token = random.nextLong();
+        long now = clock.getAsLong();
+
+        Shard shard = shard(token);
+        synchronized (shard) {
+            shard.put(token, new Stored(data, now + ttl), now);
+        }
+
+        byte[] bytes = ByteBuffer.allocate(Long.BYTES).putLong(token).array();
+        return STORED + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * @param stored STORED + token
+     * @return the callback_data, null if forgotten or if stored is not a valid token
+     */
+    public String get(String stored) {
+        long token;
+        try {
+            token = ByteBuffer.wrap(Base64.getUrlDecoder().decode(stored.substring(STORED.length()))).getLong();
+        } catch (IllegalArgumentException | java.nio.BufferUnderflowException e) {
+            return null;
+        }
+
+        long now = clock.getAsLong();
+
+        Shard shard = shard(token);
+        synchronized (shard) {
+            Stored kept = shard.get(token, now);
+            if (kept != null)
+                return kept.data;
+        }
+
+        String data = spill != null ? spill.get(token, now) : null;
+        if (data == null)
+            misses.increment();
+
+        return data;
+    }
+
+    /**
+     * @return callback_data kept in memory
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return callback_data removed from memory because their shard was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return callback_data forgotten because older than ttl
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return tokens which couldn't be resolved
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private Shard shard(long token) {
+        return shards[(int) (token >>> 60) & (SHARDS - 1)];
+    }
+
+    private static final class Stored {
+        private final String data;
+        private final long expiration;
+
+        private Stored(String data, long expiration) {
+            this.data = data;
+            this.expiration = expiration;
+        }
+
+        private long bytes() {
+            return ENTRY_OVERHEAD + 2L * data.length();
+        }
+    }
+
+    private static final class Expiry {
+        private final long token;
+        private final long expiration;
+
+        private Expiry(long token, long expiration) {
+            this.token = token;
+            this.expiration = expiration;
+        }
+    }
+
+    /**
+     * Access order, for the LRU eviction, and insertion order, for the expiration:
+     * every callback_data lives ttl, so the first inserted is the first expiring
+     */
+    private final class Shard {
+        private final long maxBytes;
+        private final LinkedHashMap<Long, Stored> lru = new LinkedHashMap<>(16, 0.75f, true);
+        private final ArrayDeque<Expiry> expiries = new ArrayDeque<>();
+        private long bytes = 0;
+
+        private Shard(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private int size() {
+            return lru.size();
+        }
+
+        private void put(long token, Stored stored, long now) {
+            expire(now);
+
+            lru.put(token, stored);
+            expiries.addLast(new Expiry(token, stored.expiration));
+            bytes += stored.bytes();
+
+            // the evicted ones stay in expiries until they expire, without their data
+            Iterator<Map.Entry<Long, Stored>> it = lru.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Long, Stored> eldest = it.next();
+                it.remove();
+                bytes -= eldest.getValue().bytes();
+                evictions.increment();
+
+                if (spill != null)
+                    spill.put(eldest.getKey(), eldest.getValue().data, eldest.getValue().expiration);
+            }
+        }
+
+        private Stored get(long token, long now) {
+            expire(now);
+
+            Stored stored = lru.get(token);
+            if (stored != null && stored.expiration < now) {
+                remove(token);
+                return null;
+            }
+
+            return stored;
+        }
+
+        /**
+         * Forgets the callback_data older than ttl
+         */
+        private void expire(long now) {
+            while (!expiries.isEmpty() && expiries.peekFirst().expiration < now) {
+                Expiry expiry = expiries.pollFirst();
+                Stored stored = lru.get(expiry.token);
+
+                // already evicted otherwise
+                if (stored != null && stored.expiration == expiry.expiration)
+                    remove(expiry.token);
+            }
+        }
+
+        private void remove(long token) {
+            Stored stored = lru.remove(token);
+            bytes -= stored.bytes();
+            expirations.increment();
+        }
+    }
+}
@@ -12,4 +12,10 @@ public interface Regex {
     String TWO_DOTS = ":";
     String COMMAND = "cmd";
 
+    // first char of the callback_data packed by PackedQueryBuilder
+    String PACKED = "~";
+
+    // first char of the callback_data kept by a QueryStore
+    String STORED = "$";
+
 }
@@ -0,0 +1,387 @@
+package gekoramy.telegram.bot.monitor;
+
+import gekoramy.telegram.bot.model.Monitor;
+import org.telegram.telegrambots.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.api.methods.send.*;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageLiveLocation;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.CallbackQuery;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.User;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Delivers the events to another Monitor on a background thread, so its latency stays off the update threads
+ * <p>
+ * Every event is written in a slot of a preallocated ring (no allocation per event):
+ * the update threads claim the next slot with a CAS, fill it and publish it,
+ * the background thread delivers every slot published, in batches, then frees them all at once.
+ * If the delegate is Flushable it's flushed after every batch (e.g. to commit a transaction)
+ * Once closed, the background thread seals the ring when it's empty: every event is either delivered or dropped
+ * <p>
+ * The objects passed are delivered as they are, not copied: they mustn't be changed once sent
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class AsyncMonitor implements Monitor, Closeable {
+
+    /**
+     * What to do with an event when the ring is full
+     */
+    public enum Overflow {
+        /**
+         * Drop it
+         */
+        DROP,
+        /**
+         * Wait for a free slot
+         */
+        BLOCK,
+        /**
+         * Drop it, and keep only one event in SAMPLE_RATE once the ring is half full
+         */
+        SAMPLE
+    }
+
+    private static final int SAMPLE_RATE = 16;
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long SEALED = Long.MIN_VALUE;                // tail once closed and drained
+
+    private final Monitor delegate;
+    private final Overflow overflow;
+    private final Consumer<Exception> onFailure;
+    private final int mask;
+    private final Slot[] slots;
+    private final AtomicLongArray published;
+    private final AtomicLong tail = new AtomicLong();     // sequence of the next slot to claim
+    private final AtomicLong head = new AtomicLong();     // sequence of the next slot to deliver
+    private final AtomicLong sampled = new AtomicLong();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final Thread consumer;
+    private volatile boolean closed;
+
+    public AsyncMonitor(Monitor delegate, int capacity, Overflow overflow) {
+        this(delegate, capacity, overflow, e -> {
+        });
+    }
+
+    /**
+     * @param delegate  receives the events, on a single background thread
+     * @param capacity  slots of the ring, rounded up to a power of two
+     * @param overflow  what to do when the ring is full
+     * @param onFailure called when the delegate throws
+     */
+    public AsyncMonitor(Monitor delegate, int capacity, Overflow overflow, Consumer<Exception> onFailure) {
+        if (capacity < 2 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be between 2 and 2^30");
+
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.delegate = delegate;
+        this.overflow = overflow;
+        this.onFailure = onFailure;
+        this.mask = size - 1;
+        this.slots = new Slot[size];
+        this.published = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            published.set(i, -1);
+        }
+
+        this.consumer = new Thread(this::consume, "AsyncMonitor");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override
+    public void sent(User user, SendMessage sendMessage) {
+        publish(EventType.SENT_MESSAGE, user, sendMessage);
+    }
+
+    @Override
+    public void sent(User user, SendLocation sendLocation) {
+        publish(EventType.SENT_LOCATION, user, sendLocation);
+    }
+
+    @Override
+    public void sent(User user, SendVenue sendVenue) {
+        publish(EventType.SENT_VENUE, user, sendVenue);
+    }
+
+    @Override
+    public void sent(User user, EditMessageText editMessageText) {
+        publish(EventType.SENT_EDIT_MESSAGE_TEXT, user, editMessageText);
+    }
+
+    @Override
+    public void sent(User user, EditMessageReplyMarkup editMessageReplyMarkup) {
+        publish(EventType.SENT_EDIT_MESSAGE_REPLY_MARKUP, user, editMessageReplyMarkup);
+    }
+
+    @Override
+    public void sent(User user, EditMessageLiveLocation editMessageLiveLocation) {
+        publish(EventType.SENT_EDIT_MESSAGE_LIVE_LOCATION, user, editMessageLiveLocation);
+    }
+
+    @Override
+    public void sent(User user, AnswerInlineQuery answerInlineQuery) {
+        publish(EventType.SENT_ANSWER_INLINE_QUERY, user, answerInlineQuery);
+    }
+
+    @Override
+    public void sent(User user, SendChatAction sendChatAction) {
+        publish(EventType.SENT_CHAT_ACTION, user, sendChatAction);
+    }
+
+    @Override
+    public void sent(User user, SendContact sendContact) {
+        publish(EventType.SENT_CONTACT, user, sendContact);
+    }
+
+    @Override
+    public void sent(User user, SendGame sendGame) {
+        publish(EventType.SENT_GAME, user, sendGame);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, Message msg) {
+        publish(EventType.RECEIVED_MESSAGE, timeStamp, cmd, not_handled, msg);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, CallbackQuery cbq) {
+        publish(EventType.RECEIVED_CALLBACK_QUERY, timeStamp, cmd, not_handled, cbq);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, InlineQuery iq) {
+        publish(EventType.RECEIVED_INLINE_QUERY, timeStamp, cmd, not_handled, iq);
+    }
+
+    /**
+     * Delivers the events already published, stops the background thread, then closes the delegate if Closeable
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(consumer);
+
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (delegate instanceof Closeable)
+            ((Closeable) delegate).close();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return events dropped, because the ring was full or sampled out or the monitor closed
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return events whose delivery threw
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return events waiting to be delivered
+     */
+    public int getQueueDepth() {
+        long sequence = tail.get();
+        return sequence == SEALED ? 0 : (int) (sequence - head.get());
+    }
+
+    private void publish(EventType type, User user, Object payload) {
+        long sequence = claim();
+        if (sequence < 0)
+            return;
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.user = user;
+        slot.payload = payload;
+        published.lazySet((int) sequence & mask, sequence);
+    }
+
+    private void publish(EventType type, long timeStamp, String cmd, boolean notHandled, Object payload) {
+        long sequence = claim();
+        if (sequence < 0)
+            return;
+
+        Slot slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.timeStamp = timeStamp;
+        slot.cmd = cmd;
+        slot.notHandled = notHandled;
+        slot.payload = payload;
+        published.lazySet((int) sequence & mask, sequence);
+    }
+
+    /**
+     * @return sequence of the slot claimed, -1 if the event is dropped
+     */
+    private long claim() {
+        while (true) {
+            if (closed) {
+                dropped.increment();
+                return -1;
+            }
+
+            long sequence = tail.get();
+            if (sequence == SEALED) {
+                dropped.increment();
+                return -1;
+            }
+
+            long used = sequence - head.get();
+
+            if (used > mask) {
+                if (overflow != Overflow.BLOCK) {
+                    dropped.increment();
+                    return -1;
+                }
+
+                LockSupport.parkNanos(FULL_PARK);
+                continue;
+            }
+
+            if (overflow == Overflow.SAMPLE && used > mask >> 1 && sampled.incrementAndGet() % SAMPLE_RATE != 0) {
+                dropped.increment();
+                return -1;
+            }
+
+            if (tail.compareAndSet(sequence, sequence + 1))
+                return sequence;
+        }
+    }
+
+    private void consume() {
+        while (true) {
+            long next = head.get();
+            int batch = 0;
+
+            while (batch < MAX_BATCH && published.get((int) next & mask) == next) {
+                deliver(slots[(int) next & mask]);
+                next++;
+                batch++;
+            }
+
+            if (batch > 0) {
+                // frees the whole batch at once
+                head.lazySet(next);
+                flush();
+            } else if (closed && tail.compareAndSet(next, SEALED)) {
+                // no slot claimed and not delivered: the producers still running see the seal
+                flush();
+                return;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK);
+            }
+        }
+    }
+
+    private void deliver(Slot slot) {
+        try {
+            switch (slot.type) {
+                case SENT_MESSAGE:
+                    delegate.sent(slot.user, (SendMessage) slot.payload);
+                    break;
+                case SENT_LOCATION:
+                    delegate.sent(slot.user, (SendLocation) slot.payload);
+                    break;
+                case SENT_VENUE:
+                    delegate.sent(slot.user, (SendVenue) slot.payload);
+                    break;
+                case SENT_EDIT_MESSAGE_TEXT:
+                    delegate.sent(slot.user, (EditMessageText) slot.payload);
+                    break;
+                case SENT_EDIT_MESSAGE_REPLY_MARKUP:
+                    delegate.sent(slot.user, (EditMessageReplyMarkup) slot.payload);
+                    break;
+                case SENT_EDIT_MESSAGE_LIVE_LOCATION:
+                    delegate.sent(slot.user, (EditMessageLiveLocation) slot.payload);
+                    break;
+                case SENT_ANSWER_INLINE_QUERY:
+                    delegate.sent(slot.user, (AnswerInlineQuery) slot.payload);
+                    break;
+                case SENT_CHAT_ACTION:
+                    delegate.sent(slot.user, (SendChatAction) slot.payload);
+                    break;
+                case SENT_CONTACT:
+                    delegate.sent(slot.user, (SendContact) slot.payload);
+                    break;
+                case SENT_GAME:
+                    delegate.sent(slot.user, (SendGame) slot.payload);
+                    break;
+                case RECEIVED_MESSAGE:
+                    delegate.received(slot.timeStamp, slot.cmd, slot.notHandled, (Message) slot.payload);
+                    break;
+                case RECEIVED_CALLBACK_QUERY:
+                    delegate.received(slot.timeStamp, slot.cmd, slot.notHandled, (CallbackQuery) slot.payload);
+                    break;
+                case RECEIVED_INLINE_QUERY:
+                    delegate.received(slot.timeStamp, slot.cmd, slot.notHandled, (InlineQuery) slot.payload);
+                    break;
+            }
+
+            delivered.increment();
+        } catch (RuntimeException e) {
+            failures.increment();
+            onFailure.accept(e);
+        } finally {
+            // no references kept to the objects delivered
+            slot.type = null;
+            slot.user = null;
+            slot.cmd = null;
+            slot.payload = null;
+        }
+    }
+
+    private void flush() {
+        if (!(delegate instanceof Flushable))
+            return;
+
+        try {
+            ((Flushable) delegate).flush();
+        } catch (IOException | RuntimeException e) {
+            failures.increment();
+            onFailure.accept(e);
+        }
+    }
+
+    private static final class Slot {
+        private EventType type;
+        private long timeStamp;
+        private String cmd;
+        private boolean notHandled;
+        private User user;
+        private Object payload;
+    }
+}
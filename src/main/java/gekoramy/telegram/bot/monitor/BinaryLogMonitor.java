@@ -0,0 +1,284 @@
+package gekoramy.telegram.bot.monitor;
+
+import gekoramy.telegram.bot.model.Monitor;
+import org.telegram.telegrambots.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.api.methods.send.*;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageLiveLocation;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.CallbackQuery;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.User;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends every event, as a fixed-layout record, to rolling memory-mapped segments:
+ * no object is kept nor serialized, so it costs a few stores per event
+ * <p>
+ * Record (32 bytes): timeStamp, chatId, userId, commandId, type, flags
+ * The type is written last, so a record torn by a crash reads as the end of the segment
+ * <p>
+ * Every command is written once in the dictionary of the directory, its index is the commandId.
+ * The events sent don't know their command (-1), nor the chat when it's a username or an inline message (0)
+ * <p>
+ * An event which can't be written (e.g. the disk is full) is dropped and counted, see getFailures()
+ * <p>
+ * Read the segments back with BinaryLogReader
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class BinaryLogMonitor implements Monitor, Closeable {
+
+    static final int MAGIC = 0x54474556;                // TGEV
+    static final short VERSION = 1;
+    static final int HEADER = 16;                       // magic, version, record size, created
+    static final int RECORD = 32;
+    static final int TYPE = 28;                         // offset of the type in a record
+    static final byte HANDLED = 1;
+    static final String PREFIX = "events-";
+    static final String SUFFIX = ".log";
+    static final String DICTIONARY = "commands.dict";
+    static final int NO_COMMAND = -1;
+
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+
+    private final File directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+    private final Deque<Long> numbers = new ArrayDeque<>();
+    private final Map<String, Integer> commands = new HashMap<>();
+    private final DataOutputStream dictionary;
+    private final LongAdder failures = new LongAdder();
+    private MappedByteBuffer segment;
+    private int position;
+    private boolean closed;
+
+    /**
+     * @param directory    directory of the segments, created if missing
+     * @param segmentBytes size of a segment
+     * @param maxSegments  segments kept, the oldest are deleted; 0 to keep all
+     */
+    public BinaryLogMonitor(File directory, int segmentBytes, int maxSegments) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES)
+            throw new IllegalArgumentException("segmentBytes must be at least " + MIN_SEGMENT_BYTES);
+        if (maxSegments < 0)
+            throw new IllegalArgumentException("maxSegments must not be negative");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+
+        this.directory = directory;
+        this.segmentBytes = HEADER + (segmentBytes - HEADER) / RECORD * RECORD;
+        this.maxSegments = maxSegments;
+
+        numbers.addAll(segments(directory));
+
+        List<String> known = BinaryLogReader.readDictionary(directory, true);
+        for (int i = 0; i < known.size(); i++)
+            commands.put(known.get(i), i);
+
+        this.dictionary = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, DICTIONARY), true)));
+
+        // a new run starts a new segment
+        roll();
+    }
+
+    @Override
+    public void sent(User user, SendMessage sendMessage) {
+        append(EventType.SENT_MESSAGE, System.currentTimeMillis(), null, chatId(sendMessage.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, SendLocation sendLocation) {
+        append(EventType.SENT_LOCATION, System.currentTimeMillis(), null, chatId(sendLocation.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, SendVenue sendVenue) {
+        append(EventType.SENT_VENUE, System.currentTimeMillis(), null, chatId(sendVenue.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, EditMessageText editMessageText) {
+        append(EventType.SENT_EDIT_MESSAGE_TEXT, System.currentTimeMillis(), null, chatId(editMessageText.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, EditMessageReplyMarkup editMessageReplyMarkup) {
+        append(EventType.SENT_EDIT_MESSAGE_REPLY_MARKUP, System.currentTimeMillis(), null, chatId(editMessageReplyMarkup.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, EditMessageLiveLocation editMessageLiveLocation) {
+        append(EventType.SENT_EDIT_MESSAGE_LIVE_LOCATION, System.currentTimeMillis(), null, chatId(editMessageLiveLocation.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, AnswerInlineQuery answerInlineQuery) {
+        append(EventType.SENT_ANSWER_INLINE_QUERY, System.currentTimeMillis(), null, 0, user, true);
+    }
+
+    @Override
+    public void sent(User user, SendChatAction sendChatAction) {
+        append(EventType.SENT_CHAT_ACTION, System.currentTimeMillis(), null, chatId(sendChatAction.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, SendContact sendContact) {
+        append(EventType.SENT_CONTACT, System.currentTimeMillis(), null, chatId(sendContact.getChatId()), user, true);
+    }
+
+    @Override
+    public void sent(User user, SendGame sendGame) {
+        append(EventType.SENT_GAME, System.currentTimeMillis(), null, chatId(sendGame.getChatId()), user, true);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, Message msg) {
+        append(EventType.RECEIVED_MESSAGE, timeStamp, cmd, msg.getChatId(), msg.getFrom(), !not_handled);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, CallbackQuery cbq) {
+        long chatId = cbq.getMessage() == null ? 0 : cbq.getMessage().getChatId();
+        append(EventType.RECEIVED_CALLBACK_QUERY, timeStamp, cmd, chatId, cbq.getFrom(), !not_handled);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, InlineQuery iq) {
+        append(EventType.RECEIVED_INLINE_QUERY, timeStamp, cmd, 0, iq.getFrom(), !not_handled);
+    }
+
+    /**
+     * @return events dropped because they couldn't be written
+     */
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Forces the last segment and the dictionary to the disk
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+
+        closed = true;
+        segment.force();
+        dictionary.close();
+    }
+
+    private synchronized void append(EventType type, long timeStamp, String cmd, long chatId, User user, boolean handled) {
+        if (closed)
+            return;
+
+        try {
+            if (position + RECORD > segmentBytes)
+                roll();
+
+            int commandId = commandId(cmd);
+            segment.putLong(position, timeStamp);
+            segment.putLong(position + 8, chatId);
+            segment.putLong(position + 16, user == null || user.getId() == null ? 0 : user.getId());
+            segment.putInt(position + 24, commandId);
+            segment.put(position + TYPE + 1, handled ? HANDLED : 0);
+            segment.put(position + TYPE, type.getCode());
+            position += RECORD;
+        } catch (IOException e) {
+            // the event is dropped rather than failing the update which caused it
+            // a segment which couldn't be rolled is rolled by the next event
+            failures.increment();
+        }
+    }
+
+    private int commandId(String cmd) throws IOException {
+        if (cmd == null)
+            return NO_COMMAND;
+
+        Integer id = commands.get(cmd);
+        if (id == null) {
+            id = commands.size();
+            dictionary.writeUTF(cmd);
+            // buffered: a failed flush is retried by the next one, so the command isn't written twice
+            commands.put(cmd, id);
+            dictionary.flush();
+        }
+
+        return id;
+    }
+
+    private void roll() throws IOException {
+        long number = numbers.isEmpty() ? 1 : numbers.getLast() + 1;
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, PREFIX + number + SUFFIX), "rw")) {
+            segment = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+
+        segment.putInt(0, MAGIC);
+        segment.putShort(4, VERSION);
+        segment.putShort(6, (short) RECORD);
+        segment.putLong(8, System.currentTimeMillis());
+        position = HEADER;
+        numbers.addLast(number);
+
+        while (maxSegments > 0 && numbers.size() > maxSegments) {
+            File oldest = new File(directory, PREFIX + numbers.removeFirst() + SUFFIX);
+            if (!oldest.delete())
+                throw new IOException("Unable to delete " + oldest);
+        }
+    }
+
+    /**
+     * @return numbers of the segments in the directory, in order
+     */
+    static List<Long> segments(File directory) {
+        List<Long> numbers = new ArrayList<>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(PREFIX) && name.endsWith(SUFFIX)) {
+                    try {
+                        numbers.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException ignored) {
+                        // not a segment
+                    }
+                }
+            }
+        }
+
+        numbers.sort(null);
+        return numbers;
+    }
+
+    /**
+     * @return the chat id, 0 if missing or a username
+     */
+    private static long chatId(String chatId) {
+        if (chatId == null || chatId.isEmpty() || chatId.charAt(0) == '@')
+            return 0;
+
+        try {
+            return Long.parseLong(chatId);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
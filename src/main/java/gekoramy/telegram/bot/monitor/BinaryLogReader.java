@@ -0,0 +1,198 @@
+package gekoramy.telegram.bot.monitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams back the events written by a BinaryLogMonitor, segment by segment, in order
+ * e.g. to count the updates received by command, or the rate of the ones not handled
+ * <p>
+ * The segments are mapped read only, so they can be read while the monitor is writing them
+ * The dictionary is read again once an event has a commandId past the commands known
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class BinaryLogReader {
+
+    private final File directory;
+    private volatile List<String> commands;
+    private long dictionaryLength;              // bytes of the dictionary when last read
+
+    /**
+     * @param directory directory of a BinaryLogMonitor
+     */
+    public BinaryLogReader(File directory) throws IOException {
+        this.directory = directory;
+        reload();
+    }
+
+    /**
+     * @return the commands, by commandId, as last read
+     */
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    public void read(Consumer<Event> consumer) throws IOException {
+        read(Long.MIN_VALUE, Long.MAX_VALUE, consumer);
+    }
+
+    /**
+     * @param from     min timeStamp, inclusive
+     * @param to       max timeStamp, exclusive
+     * @param consumer receives every event, in the order written; the Event is reused, don't keep it
+     */
+    public void read(long from, long to, Consumer<Event> consumer) throws IOException {
+        Event event = new Event();
+
+        for (long number : BinaryLogMonitor.segments(directory)) {
+            File file = new File(directory, BinaryLogMonitor.PREFIX + number + BinaryLogMonitor.SUFFIX);
+
+            MappedByteBuffer segment;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+
+            if (segment.limit() < BinaryLogMonitor.HEADER
+                    || segment.getInt(0) != BinaryLogMonitor.MAGIC
+                    || segment.getShort(4) != BinaryLogMonitor.VERSION
+                    || segment.getShort(6) != BinaryLogMonitor.RECORD)
+                throw new IOException("Not an event log: " + file);
+
+            for (int position = BinaryLogMonitor.HEADER; position + BinaryLogMonitor.RECORD <= segment.limit(); position += BinaryLogMonitor.RECORD) {
+                EventType type = EventType.of(segment.get(position + BinaryLogMonitor.TYPE));
+                if (type == null)
+                    break;
+
+                long timeStamp = segment.getLong(position);
+                if (timeStamp < from || timeStamp >= to)
+                    continue;
+
+                event.timeStamp = timeStamp;
+                event.chatId = segment.getLong(position + 8);
+                event.userId = segment.getLong(position + 16);
+                event.commandId = segment.getInt(position + 24);
+                if (event.commandId >= commands.size())
+                    reload();
+
+                event.type = type;
+                event.handled = (segment.get(position + BinaryLogMonitor.TYPE + 1) & BinaryLogMonitor.HANDLED) != 0;
+                consumer.accept(event);
+            }
+        }
+    }
+
+    /**
+     * Reads the dictionary again, if it has grown
+     */
+    private synchronized void reload() throws IOException {
+        long length = new File(directory, BinaryLogMonitor.DICTIONARY).length();
+        if (commands != null && length == dictionaryLength)
+            return;
+
+        dictionaryLength = length;
+        commands = Collections.unmodifiableList(readDictionary(directory, false));
+    }
+
+    /**
+     * @param truncate true to cut a command torn by a crash, so the following ones can be appended
+     */
+    static List<String> readDictionary(File directory, boolean truncate) throws IOException {
+        List<String> commands = new ArrayList<>();
+        File file = new File(directory, BinaryLogMonitor.DICTIONARY);
+        if (!file.exists())
+            return commands;
+
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+        DataInputStream in = new DataInputStream(buffer);
+        long valid = 0;
+        try {
+            while (buffer.available() > 0) {
+                commands.add(in.readUTF());
+                valid = bytes.length - buffer.available();
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // a command torn by a crash
+        }
+
+        if (truncate && valid < bytes.length) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(valid);
+            }
+        }
+
+        return commands;
+    }
+
+    /**
+     * An event read, reused for every record
+     */
+    public final class Event {
+        private long timeStamp;
+        private long chatId;
+        private long userId;
+        private int commandId;
+        private EventType type;
+        private boolean handled;
+
+        private Event() {
+        }
+
+        public long getTimeStamp() {
+            return timeStamp;
+        }
+
+        /**
+         * @return 0 if unknown
+         */
+        public long getChatId() {
+            return chatId;
+        }
+
+        /**
+         * @return 0 if unknown
+         */
+        public long getUserId() {
+            return userId;
+        }
+
+        /**
+         * @return -1 if unknown
+         */
+        public int getCommandId() {
+            return commandId;
+        }
+
+        /**
+         * @return null if unknown
+         */
+        public String getCommand() {
+            return commandId < 0 || commandId >= commands.size() ? null : commands.get(commandId);
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        /**
+         * @return false for the updates received and not handled, true otherwise
+         */
+        public boolean isHandled() {
+            return handled;
+        }
+    }
+}
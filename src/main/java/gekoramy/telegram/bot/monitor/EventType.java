@@ -0,0 +1,43 @@
+package gekoramy.telegram.bot.monitor;
+
+/**
+ * The events a Monitor is told about, one for every method of Monitor
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public enum EventType {
+    RECEIVED_MESSAGE,
+    RECEIVED_CALLBACK_QUERY,
+    RECEIVED_INLINE_QUERY,
+    SENT_MESSAGE,
+    SENT_LOCATION,
+    SENT_VENUE,
+    SENT_EDIT_MESSAGE_TEXT,
+    SENT_EDIT_MESSAGE_REPLY_MARKUP,
+    SENT_EDIT_MESSAGE_LIVE_LOCATION,
+    SENT_ANSWER_INLINE_QUERY,
+    SENT_CHAT_ACTION,
+    SENT_CONTACT,
+    SENT_GAME;
+
+    private static final EventType[] TYPES = values();
+
+    /**
+     * @return code of the type, never 0
+     */
+    public byte getCode() {
+        return (byte) (ordinal() + 1);
+    }
+
+    public boolean isReceived() {
+        return ordinal() <= RECEIVED_INLINE_QUERY.ordinal();
+    }
+
+    /**
+     * @return type of the code, null if unknown
+     */
+    public static EventType of(byte code) {
+        return code < 1 || code > TYPES.length ? null : TYPES[code - 1];
+    }
+}
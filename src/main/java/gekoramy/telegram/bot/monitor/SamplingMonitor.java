@@ -0,0 +1,305 @@
+package gekoramy.telegram.bot.monitor;
+
+import gekoramy.telegram.bot.model.Monitor;
+import org.telegram.telegrambots.api.methods.AnswerInlineQuery;
+import org.telegram.telegrambots.api.methods.send.*;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageLiveLocation;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.api.objects.CallbackQuery;
+import org.telegram.telegrambots.api.objects.Message;
+import org.telegram.telegrambots.api.objects.User;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Forwards only a sample of the events to another Monitor, so its cost can be turned down under load
+ * - an event is forwarded with probability: rate of its type * rate of its command (received only), both 1 by default
+ * - every event is counted exactly, by type, and the updates received by command too
+ * - a uniform sample of the objects of every type is kept in a reservoir, whatever the rates
+ * <p>
+ * The rates can be changed at any time, e.g. from an admin command
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class SamplingMonitor implements Monitor, Closeable {
+
+    private static final EventType[] TYPES = EventType.values();
+
+    private final Monitor delegate;
+    private volatile double[] typeRates = new double[TYPES.length];       // copied on write
+    private final Map<String, Double> commandRates = new ConcurrentHashMap<>();
+    private final LongAdder[] counts = new LongAdder[TYPES.length];
+    private final LongAdder[] forwarded = new LongAdder[TYPES.length];
+    private final Map<String, CommandCount> commandCounts = new ConcurrentHashMap<>();
+    private final Reservoir[] reservoirs = new Reservoir[TYPES.length];
+
+    /**
+     * @param delegate      receives the events sampled
+     * @param reservoirSize objects kept for every type
+     */
+    public SamplingMonitor(Monitor delegate, int reservoirSize) {
+        if (reservoirSize < 0)
+            throw new IllegalArgumentException("reservoirSize must not be negative");
+
+        this.delegate = delegate;
+        Arrays.fill(typeRates, 1);
+        for (int i = 0; i < TYPES.length; i++) {
+            counts[i] = new LongAdder();
+            forwarded[i] = new LongAdder();
+            reservoirs[i] = new Reservoir(reservoirSize);
+        }
+    }
+
+    /**
+     * @param rate between 0 (none forwarded) and 1 (all forwarded)
+     */
+    public synchronized void setRate(EventType type, double rate) {
+        double[] rates = typeRates.clone();
+        rates[type.ordinal()] = check(rate);
+        typeRates = rates;
+    }
+
+    public double getRate(EventType type) {
+        return typeRates[type.ordinal()];
+    }
+
+    /**
+     * @param rate between 0 (none forwarded) and 1 (all forwarded), of the updates received for the command
+     */
+    public void setRate(String command, double rate) {
+        commandRates.put(command, check(rate));
+    }
+
+    public void removeRate(String command) {
+        commandRates.remove(command);
+    }
+
+    /**
+     * @return events of the type, forwarded or not
+     */
+    public long getCount(EventType type) {
+        return counts[type.ordinal()].sum();
+    }
+
+    /**
+     * @return events of the type forwarded
+     */
+    public long getForwarded(EventType type) {
+        return forwarded[type.ordinal()].sum();
+    }
+
+    /**
+     * @return updates received for the command, forwarded or not
+     */
+    public long getReceived(String command) {
+        CommandCount count = commandCounts.get(command);
+        return count == null ? 0 : count.received.sum();
+    }
+
+    /**
+     * @return updates received for the command and not handled, forwarded or not
+     */
+    public long getNotHandled(String command) {
+        CommandCount count = commandCounts.get(command);
+        return count == null ? 0 : count.notHandled.sum();
+    }
+
+    /**
+     * @return a uniform sample of the objects of the type, since the last reset
+     */
+    public List<Object> getSample(EventType type) {
+        return reservoirs[type.ordinal()].snapshot();
+    }
+
+    public void resetSample(EventType type) {
+        reservoirs[type.ordinal()].reset();
+    }
+
+    @Override
+    public void sent(User user, SendMessage sendMessage) {
+        if (sample(EventType.SENT_MESSAGE, sendMessage))
+            delegate.sent(user, sendMessage);
+    }
+
+    @Override
+    public void sent(User user, SendLocation sendLocation) {
+        if (sample(EventType.SENT_LOCATION, sendLocation))
+            delegate.sent(user, sendLocation);
+    }
+
+    @Override
+    public void sent(User user, SendVenue sendVenue) {
+        if (sample(EventType.SENT_VENUE, sendVenue))
+            delegate.sent(user, sendVenue);
+    }
+
+    @Override
+    public void sent(User user, EditMessageText editMessageText) {
+        if (sample(EventType.SENT_EDIT_MESSAGE_TEXT, editMessageText))
+            delegate.sent(user, editMessageText);
+    }
+
+    @Override
+    public void sent(User user, EditMessageReplyMarkup editMessageReplyMarkup) {
+        if (sample(EventType.SENT_EDIT_MESSAGE_REPLY_MARKUP, editMessageReplyMarkup))
+            delegate.sent(user, editMessageReplyMarkup);
+    }
+
+    @Override
+    public void sent(User user, EditMessageLiveLocation editMessageLiveLocation) {
+        if (sample(EventType.SENT_EDIT_MESSAGE_LIVE_LOCATION, editMessageLiveLocation))
+            delegate.sent(user, editMessageLiveLocation);
+    }
+
+    @Override
+    public void sent(User user, AnswerInlineQuery answerInlineQuery) {
+        if (sample(EventType.SENT_ANSWER_INLINE_QUERY, answerInlineQuery))
+            delegate.sent(user, answerInlineQuery);
+    }
+
+    @Override
+    public void sent(User user, SendChatAction sendChatAction) {
+        if (sample(EventType.SENT_CHAT_ACTION, sendChatAction))
+            delegate.sent(user, sendChatAction);
+    }
+
+    @Override
+    public void sent(User user, SendContact sendContact) {
+        if (sample(EventType.SENT_CONTACT, sendContact))
+            delegate.sent(user, sendContact);
+    }
+
+    @Override
+    public void sent(User user, SendGame sendGame) {
+        if (sample(EventType.SENT_GAME, sendGame))
+            delegate.sent(user, sendGame);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, Message msg) {
+        if (sample(EventType.RECEIVED_MESSAGE, cmd, not_handled, msg))
+            delegate.received(timeStamp, cmd, not_handled, msg);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, CallbackQuery cbq) {
+        if (sample(EventType.RECEIVED_CALLBACK_QUERY, cmd, not_handled, cbq))
+            delegate.received(timeStamp, cmd, not_handled, cbq);
+    }
+
+    @Override
+    public void received(long timeStamp, String cmd, boolean not_handled, InlineQuery iq) {
+        if (sample(EventType.RECEIVED_INLINE_QUERY, cmd, not_handled, iq))
+            delegate.received(timeStamp, cmd, not_handled, iq);
+    }
+
+    /**
+     * Closes the delegate, if Closeable
+     */
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable)
+            ((Closeable) delegate).close();
+    }
+
+    private boolean sample(EventType type, String cmd, boolean notHandled, Object payload) {
+        if (cmd != null) {
+            CommandCount count = commandCounts.computeIfAbsent(cmd, c -> new CommandCount());
+            count.received.increment();
+            if (notHandled)
+                count.notHandled.increment();
+        }
+
+        Double commandRate = cmd == null || commandRates.isEmpty() ? null : commandRates.get(cmd);
+        return sample(type, payload, commandRate == null ? 1 : commandRate);
+    }
+
+    private boolean sample(EventType type, Object payload) {
+        return sample(type, payload, 1);
+    }
+
+    private boolean sample(EventType type, Object payload, double commandRate) {
+        int i = type.ordinal();
+        counts[i].increment();
+        reservoirs[i].offer(payload);
+
+        double rate = typeRates[i] * commandRate;
+        if (rate < 1 && (rate <= 0 || ThreadLocalRandom.current().nextDouble() >= rate))
+            return false;
+
+        forwarded[i].increment();
+        return true;
+    }
+
+    private static double check(double rate) {
+        if (!(rate >= 0 && rate <= 1))
+            throw new IllegalArgumentException("rate must be between 0 and 1");
+
+        return rate;
+    }
+
+    private static final class CommandCount {
+        private final LongAdder received = new LongAdder();
+        private final LongAdder notHandled = new LongAdder();
+    }
+
+    /**
+     * Algorithm R: the n-th object offered replaces a random slot with probability size / n,
+     * so past the first ones almost every offer costs an increment and a random number
+     */
+    private static final class Reservoir {
+        private final AtomicReferenceArray<Object> slots;
+        private final AtomicLong seen = new AtomicLong();
+
+        private Reservoir(int size) {
+            this.slots = new AtomicReferenceArray<>(size);
+        }
+
+        private void offer(Object payload) {
+            int size = slots.length();
+            if (size == 0)
+                return;
+
+            long n = seen.incrementAndGet();
+            if (n <= size) {
+                slots.set((int) n - 1, payload);
+                return;
+            }
+
+            long slot = ThreadLocalRandom.current().nextLong(n);
+            if (slot < size)
+                slots.set((int) slot, payload);
+        }
+
+        private List<Object> snapshot() {
+            int filled = (int) Math.min(seen.get(), slots.length());
+            List<Object> sample = new ArrayList<>(filled);
+            for (int i = 0; i < filled; i++) {
+                Object payload = slots.get(i);
+                if (payload != null)
+                    sample.add(payload);
+            }
+
+            return sample;
+        }
+
+        private void reset() {
+            seen.set(0);
+            for (int i = 0; i < slots.length(); i++)
+                slots.set(i, null);
+        }
+    }
+}
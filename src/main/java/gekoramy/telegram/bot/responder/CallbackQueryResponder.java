@@ -2,6 +2,7 @@ package gekoramy.telegram.bot.responder;
 
 import gekoramy.telegram.bot.responder.type.CallbackQueryEditor;
 import gekoramy.telegram.bot.model.Monitor;
+import gekoramy.telegram.bot.timed.Priority;
 import gekoramy.telegram.bot.timed.TimedSender;
 import gekoramy.telegram.bot.responder.type.MessageEditor;
 import org.telegram.telegrambots.api.methods.AnswerCallbackQuery;
@@ -13,6 +14,7 @@ import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.api.objects.CallbackQuery;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * It collects all the possible answers to a CallbackQuery
@@ -32,7 +34,11 @@ public class CallbackQueryResponder extends MessageResponder implements Callback
     }
 
     private void requestExecute(BotApiMethod<? extends Serializable> method) {
-        sender.requestExecute(msg.getChatId(), method);
+        sender.requestExecute(msg.getChatId(), method, Priority.INTERACTIVE);
+    }
+
+    private <T extends Serializable> CompletableFuture<T> requestExecuteAsync(BotApiMethod<T> method) {
+        return sender.requestExecuteAsync(msg.getChatId(), method, Priority.INTERACTIVE);
     }
 
     public CallbackQueryResponder answer(AnswerCallbackQuery aCbq) {
@@ -72,6 +78,46 @@ public class CallbackQueryResponder extends MessageResponder implements Callback
         return this;
     }
 
+    public CompletableFuture<Boolean> answerAsync(AnswerCallbackQuery aCbq) {
+        return requestExecuteAsync(aCbq.setCallbackQueryId(cbq.getId()));
+    }
+
+    /**
+     * @return completed with the message itself if the text is already the same
+     */
+    public CompletableFuture<Serializable> sendAsync(EditMessageText editMessageText) {
+        CompletableFuture<Serializable> result = CompletableFuture.completedFuture(msg);
+        if (!equalsFormattedTexts(editMessageText.getText(), msg.getText(), ParseMode.MARKDOWN)) {
+            result = requestExecuteAsync(
+                    editMessageText
+                            .setMessageId(msg.getMessageId())
+                            .setChatId(msg.getChatId())
+            );
+        }
+        monitor.sent(user, editMessageText);
+        return result;
+    }
+
+    public CompletableFuture<Serializable> sendAsync(EditMessageReplyMarkup editMessageReplyMarkup) {
+        CompletableFuture<Serializable> result = requestExecuteAsync(
+                editMessageReplyMarkup
+                        .setMessageId(msg.getMessageId())
+                        .setChatId(msg.getChatId())
+        );
+        monitor.sent(user, editMessageReplyMarkup);
+        return result;
+    }
+
+    public CompletableFuture<Serializable> sendAsync(EditMessageLiveLocation editMessageLiveLocation) {
+        CompletableFuture<Serializable> result = requestExecuteAsync(
+                editMessageLiveLocation
+                        .setMessageId(msg.getMessageId())
+                        .setChatId(msg.getChatId())
+        );
+        monitor.sent(user, editMessageLiveLocation);
+        return result;
+    }
+
     @Override
     public void close() {
         monitor.received(timeStamp, cmd, handled, cbq);
@@ -3,6 +3,7 @@ package gekoramy.telegram.bot.responder;
 import gekoramy.telegram.bot.timed.AbsResponder;
 import gekoramy.telegram.bot.responder.type.CallbackQueryEditor;
 import gekoramy.telegram.bot.model.Monitor;
+import gekoramy.telegram.bot.timed.Priority;
 import gekoramy.telegram.bot.timed.TimedSender;
 import org.telegram.telegrambots.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.api.methods.BotApiMethod;
@@ -12,6 +13,7 @@ import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.api.objects.CallbackQuery;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * It collects all the possible answers to a CallbackQuery received from an InlineMessage
@@ -30,7 +32,11 @@ public class InlineCallbackQueryResponder extends AbsResponder implements Callba
     }
 
     private void requestExecute(BotApiMethod<? extends Serializable> method) {
-        sender.requestExecute((long) cbq.getFrom().getId(), method);
+        sender.requestExecute((long) cbq.getFrom().getId(), method, Priority.INTERACTIVE);
+    }
+
+    private <T extends Serializable> CompletableFuture<T> requestExecuteAsync(BotApiMethod<T> method) {
+        return sender.requestExecuteAsync((long) cbq.getFrom().getId(), method, Priority.INTERACTIVE);
     }
 
     public InlineCallbackQueryResponder answer(AnswerCallbackQuery answerCallbackQuery) {
@@ -56,6 +62,28 @@ public class InlineCallbackQueryResponder extends AbsResponder implements Callba
         return this;
     }
 
+    public CompletableFuture<Boolean> answerAsync(AnswerCallbackQuery answerCallbackQuery) {
+        return requestExecuteAsync(answerCallbackQuery.setCallbackQueryId(cbq.getId()));
+    }
+
+    public CompletableFuture<Serializable> sendAsync(EditMessageText editMessageText) {
+        CompletableFuture<Serializable> result = requestExecuteAsync(editMessageText.setInlineMessageId(cbq.getInlineMessageId()));
+        monitor.sent(cbq.getFrom(), editMessageText);
+        return result;
+    }
+
+    public CompletableFuture<Serializable> sendAsync(EditMessageReplyMarkup editMessageReplyMarkup) {
+        CompletableFuture<Serializable> result = requestExecuteAsync(editMessageReplyMarkup.setInlineMessageId(cbq.getInlineMessageId()));
+        monitor.sent(cbq.getFrom(), editMessageReplyMarkup);
+        return result;
+    }
+
+    public CompletableFuture<Serializable> sendAsync(EditMessageLiveLocation editMessageLiveLocation) {
+        CompletableFuture<Serializable> result = requestExecuteAsync(editMessageLiveLocation.setInlineMessageId(cbq.getInlineMessageId()));
+        monitor.sent(cbq.getFrom(), editMessageLiveLocation);
+        return result;
+    }
+
     @Override
     public void close() {
         monitor.received(timeStamp, cmd, handled, cbq);
@@ -2,10 +2,13 @@ package gekoramy.telegram.bot.responder;
 
 import gekoramy.telegram.bot.timed.AbsResponder;
 import gekoramy.telegram.bot.model.Monitor;
+import gekoramy.telegram.bot.timed.Priority;
 import gekoramy.telegram.bot.timed.TimedSender;
 import org.telegram.telegrambots.api.methods.AnswerInlineQuery;
 import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * It collects all the possible answers to an InlineQuery
  * Work as middle man between UsaCaseCommand - Monitor - TimedSender
@@ -25,9 +28,20 @@ public class InlineQueryResponder extends AbsResponder {
     public void answer(AnswerInlineQuery answerInlineQuery) {
         sender.requestExecute(
                 null,
-                answerInlineQuery.setInlineQueryId(iq.getId())
+                answerInlineQuery.setInlineQueryId(iq.getId()),
+                Priority.INTERACTIVE
+        );
+        monitor.sent(iq.getFrom(), answerInlineQuery);
+    }
+
+    public CompletableFuture<Boolean> answerAsync(AnswerInlineQuery answerInlineQuery) {
+        CompletableFuture<Boolean> result = sender.requestExecuteAsync(
+                null,
+                answerInlineQuery.setInlineQueryId(iq.getId()),
+                Priority.INTERACTIVE
         );
         monitor.sent(iq.getFrom(), answerInlineQuery);
+        return result;
     }
 
     @Override
@@ -2,6 +2,7 @@ package gekoramy.telegram.bot.responder;
 
 import gekoramy.telegram.bot.model.Monitor;
 import gekoramy.telegram.bot.timed.AbsResponder;
+import gekoramy.telegram.bot.timed.Priority;
 import gekoramy.telegram.bot.timed.TimedSender;
 import gekoramy.telegram.bot.responder.type.MessageSender;
 import org.telegram.telegrambots.api.methods.BotApiMethod;
@@ -10,6 +11,7 @@ import org.telegram.telegrambots.api.objects.Message;
 import org.telegram.telegrambots.api.objects.User;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * It collects all the possible answers to a Message
@@ -30,7 +32,11 @@ public class MessageResponder extends AbsResponder implements MessageSender {
     }
 
     private void requestExecute(BotApiMethod<? extends Serializable> method) {
-        sender.requestExecute(msg.getChatId(), method);
+        sender.requestExecute(msg.getChatId(), method, Priority.INTERACTIVE);
+    }
+
+    private <T extends Serializable> CompletableFuture<T> requestExecuteAsync(BotApiMethod<T> method) {
+        return sender.requestExecuteAsync(msg.getChatId(), method, Priority.INTERACTIVE);
     }
 
     public MessageResponder send(SendMessage sendMessage) {
@@ -69,6 +75,42 @@ public class MessageResponder extends AbsResponder implements MessageSender {
         return this;
     }
 
+    public CompletableFuture<Message> sendAsync(SendMessage sendMessage) {
+        CompletableFuture<Message> result = requestExecuteAsync(sendMessage.setChatId(msg.getChatId()));
+        monitor.sent(user, sendMessage);
+        return result;
+    }
+
+    public CompletableFuture<Message> sendAsync(SendVenue sendVenue) {
+        CompletableFuture<Message> result = requestExecuteAsync(sendVenue.setChatId(msg.getChatId()));
+        monitor.sent(user, sendVenue);
+        return result;
+    }
+
+    public CompletableFuture<Message> sendAsync(SendLocation sendLocation) {
+        CompletableFuture<Message> result = requestExecuteAsync(sendLocation.setChatId(msg.getChatId()));
+        monitor.sent(user, sendLocation);
+        return result;
+    }
+
+    public CompletableFuture<Boolean> sendAsync(SendChatAction sendChatAction) {
+        CompletableFuture<Boolean> result = requestExecuteAsync(sendChatAction.setChatId(msg.getChatId()));
+        monitor.sent(user, sendChatAction);
+        return result;
+    }
+
+    public CompletableFuture<Message> sendAsync(SendContact sendContact) {
+        CompletableFuture<Message> result = requestExecuteAsync(sendContact.setChatId(msg.getChatId()));
+        monitor.sent(user, sendContact);
+        return result;
+    }
+
+    public CompletableFuture<Message> sendAsync(SendGame sendGame) {
+        CompletableFuture<Message> result = requestExecuteAsync(sendGame.setChatId(msg.getChatId()));
+        monitor.sent(user, sendGame);
+        return result;
+    }
+
     public void toComplete() {
         toComplete(msg.getChatId());
     }
@@ -2,6 +2,8 @@ package gekoramy.telegram.bot.responder.type;
 
 import org.telegram.telegrambots.api.methods.AnswerCallbackQuery;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Luca Mosetti
  * @since 02/2018
@@ -10,4 +12,6 @@ public interface CallbackQueryEditor extends MessageEditor {
 
     CallbackQueryEditor answer(AnswerCallbackQuery answerCallbackQuery);
 
+    CompletableFuture<Boolean> answerAsync(AnswerCallbackQuery answerCallbackQuery);
+
 }
@@ -4,6 +4,9 @@ import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageLiveLoc
 import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageReplyMarkup;
 import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
 
+import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author Luca Mosetti
  * @since 02/2018
@@ -16,4 +19,10 @@ public interface MessageEditor extends Handling {
 
     MessageEditor send(EditMessageLiveLocation editMessageLiveLocation);
 
+    CompletableFuture<Serializable> sendAsync(EditMessageText editMessageText);
+
+    CompletableFuture<Serializable> sendAsync(EditMessageReplyMarkup editMessageReplyMarkup);
+
+    CompletableFuture<Serializable> sendAsync(EditMessageLiveLocation editMessageLiveLocation);
+
 }
@@ -2,6 +2,9 @@ package gekoramy.telegram.bot.responder.type;
 
 import gekoramy.telegram.bot.responder.MessageResponder;
 import org.telegram.telegrambots.api.methods.send.*;
+import org.telegram.telegrambots.api.objects.Message;
+
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Luca Mosetti
@@ -21,4 +24,16 @@ public interface MessageSender extends Handling {
 
     MessageResponder send(SendGame sendContact);
 
+    CompletableFuture<Message> sendAsync(SendMessage sendMessage);
+
+    CompletableFuture<Message> sendAsync(SendVenue sendVenue);
+
+    CompletableFuture<Message> sendAsync(SendLocation sendLocation);
+
+    CompletableFuture<Boolean> sendAsync(SendChatAction sendChatAction);
+
+    CompletableFuture<Message> sendAsync(SendContact sendContact);
+
+    CompletableFuture<Message> sendAsync(SendGame sendGame);
+
 }
@@ -26,7 +26,7 @@ public abstract class AbsResponder implements AutoCloseable {
     }
 
     protected void toComplete(Long chatId) {
-        Chats.setCommand(chatId, cmd);
+        sender.getChats().setCommand(chatId, cmd);
     }
 
     public void setHandled(boolean handled) {
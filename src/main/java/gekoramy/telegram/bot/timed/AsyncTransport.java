@@ -0,0 +1,143 @@
+package gekoramy.telegram.bot.timed;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes the methods through a non-blocking http client:
+ * a single I/O thread serves all the requests, so a slow round-trip doesn't hold any thread
+ * <p>
+ * At most 'maxInFlight' requests wait for a response at the same time, each one on its own pooled connection:
+ * execute(...) blocks the caller until one of them completes
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class AsyncTransport implements Closeable {
+
+    // same timeouts of DefaultAbsSender
+    private static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(75);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CloseableHttpAsyncClient httpClient;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    /**
+     * @param requestConfig configuration of each request, null for the default one
+     * @param maxInFlight   max requests waiting for a response
+     */
+    AsyncTransport(RequestConfig requestConfig, int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+
+        if (requestConfig == null)
+            requestConfig = RequestConfig.custom()
+                    .setSocketTimeout(SOCKET_TIMEOUT)
+                    .setConnectTimeout(SOCKET_TIMEOUT)
+                    .setConnectionRequestTimeout(SOCKET_TIMEOUT)
+                    .build();
+
+        this.inFlight = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.httpClient = HttpAsyncClients.custom()
+                .setMaxConnPerRoute(maxInFlight)
+                .setMaxConnTotal(maxInFlight)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        this.httpClient.start();
+    }
+
+    /**
+     * @param url    url of the method
+     * @param method method to execute
+     * @return completed by the I/O thread with the result, or with the TelegramApiException
+     * @throws InterruptedException interrupted while waiting for a request to complete
+     */
+    <T extends Serializable> CompletableFuture<T> execute(String url, BotApiMethod<T> method) throws InterruptedException {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        HttpPost httpPost = new HttpPost(url);
+        try {
+            method.validate();
+            httpPost.addHeader("charset", StandardCharsets.UTF_8.name());
+            httpPost.setEntity(new StringEntity(objectMapper.writeValueAsString(method), ContentType.APPLICATION_JSON));
+        } catch (TelegramApiException e) {
+            result.completeExceptionally(e);
+            return result;
+        } catch (IOException e) {
+            result.completeExceptionally(new TelegramApiException("Unable to execute " + method.getMethod() + " method", e));
+            return result;
+        }
+
+        inFlight.acquire();
+        try {
+            httpClient.execute(httpPost, callback(method, result));
+        } catch (RuntimeException e) {
+            // client already closed
+            inFlight.release();
+            throw e;
+        }
+
+        return result;
+    }
+
+    private <T extends Serializable> FutureCallback<HttpResponse> callback(BotApiMethod<T> method, CompletableFuture<T> result) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                inFlight.release();
+                try {
+                    result.complete(method.deserializeResponse(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8)));
+                } catch (TelegramApiException e) {
+                    result.completeExceptionally(e);
+                } catch (IOException e) {
+                    result.completeExceptionally(new TelegramApiException("Unable to execute " + method.getMethod() + " method", e));
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                inFlight.release();
+                result.completeExceptionally(new TelegramApiException("Unable to execute " + method.getMethod() + " method", e));
+            }
+
+            @Override
+            public void cancelled() {
+                inFlight.release();
+                result.completeExceptionally(new TelegramApiException("Unable to execute " + method.getMethod() + " method: cancelled"));
+            }
+        };
+    }
+
+    /**
+     * @return requests waiting for a response
+     */
+    int getInFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,271 @@
+package gekoramy.telegram.bot.timed;
+
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Sends the same content to many chats, with Priority.BULK
+ * The recipients are read lazily: at most 'window' of them are queued in the sender at the same time,
+ * so a campaign of millions of chats runs in bounded memory, just ahead of the rate limit
+ * <p>
+ * The cursor counts the recipients whose method is done (sent, failed or skipped), without holes:
+ * a Broadcast restarted from a saved cursor doesn't send twice to them
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class Broadcast {
+
+    private static final int DEFAULT_WINDOW = 256;
+    private static final AtomicInteger BROADCASTS = new AtomicInteger();
+
+    public interface Listener {
+
+        /**
+         * Called by a sender worker every time the cursor moves forward, in order:
+         * it holds the broadcast, so it should be fast
+         *
+         * @param cursor  recipients done, to be saved as checkpoint
+         * @param sent    methods executed
+         * @param failed  methods failed, discarded or not built
+         * @param skipped recipients without a method
+         */
+        void onProgress(long cursor, long sent, long failed, long skipped);
+
+    }
+
+    private final TimedSender sender;
+    private final Iterator<Long> chatIds;
+    private final Function<Long, ? extends BotApiMethod<? extends Serializable>> template;
+    private final Listener listener;
+    private final boolean[] done;               // recipients done after the cursor, indexed by position % window
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    // guarded by this
+    private long cursor;                        // position of the first recipient not done
+    private long next;                          // position of the next recipient to read
+    private boolean exhausted;
+    private boolean paused;
+    private boolean cancelled;
+    private Thread feeder;
+
+    /**
+     * @param sender   sender of the methods
+     * @param chatIds  recipients, read by the broadcast thread
+     * @param template method to send to a chat, null to skip it
+     * @param listener notified of the progress, can be null
+     */
+    public Broadcast(TimedSender sender, Iterator<Long> chatIds, Function<Long, ? extends BotApiMethod<? extends Serializable>> template, Listener listener) {
+        this(sender, chatIds, template, DEFAULT_WINDOW, 0, listener);
+    }
+
+    /**
+     * @param chatIds recipients, consumed by the broadcast thread
+     */
+    public Broadcast(TimedSender sender, Stream<Long> chatIds, Function<Long, ? extends BotApiMethod<? extends Serializable>> template, Listener listener) {
+        this(sender, chatIds.iterator(), template, DEFAULT_WINDOW, 0, listener);
+    }
+
+    /**
+     * @param sender   sender of the methods
+     * @param chatIds  recipients, read by the broadcast thread
+     * @param template method to send to a chat, null to skip it
+     * @param window   max recipients queued in the sender at the same time
+     * @param cursor   recipients already done (a saved checkpoint), skipped without being sent
+     * @param listener notified of the progress, can be null
+     */
+    public Broadcast(TimedSender sender, Iterator<Long> chatIds, Function<Long, ? extends BotApiMethod<? extends Serializable>> template, int window, long cursor, Listener listener) {
+        if (window < 1)
+            throw new IllegalArgumentException("window must be positive");
+
+        if (cursor < 0)
+            throw new IllegalArgumentException("cursor cannot be negative");
+
+        this.sender = sender;
+        this.chatIds = chatIds;
+        this.template = template;
+        this.listener = listener;
+        this.done = new boolean[window];
+        this.cursor = cursor;
+        this.next = cursor;
+    }
+
+    /**
+     * Starts reading the recipients on a new thread
+     *
+     * @return completed once every recipient is done, or once cancelled and the queued ones are done
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (feeder != null)
+            throw new IllegalStateException("broadcast already started");
+
+        feeder = new Thread(this::feed, "Broadcast-" + BROADCASTS.incrementAndGet());
+        feeder.setDaemon(true);
+        feeder.start();
+        return completion;
+    }
+
+    /**
+     * Stops reading the recipients: the ones already queued are still sent
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    public synchronized void resume() {
+        paused = false;
+        notifyAll();
+    }
+
+    /**
+     * Stops reading the recipients for good: the ones already queued are still sent
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return recipients done, without holes
+     */
+    public synchronized long getCursor() {
+        return cursor;
+    }
+
+    public long getSent() {
+        return sent.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    private void feed() {
+        try {
+            long checkpoint;
+            synchronized (this) {
+                checkpoint = cursor;
+            }
+
+            // skips the recipients of the checkpoint
+            for (long i = 0; i < checkpoint && chatIds.hasNext(); i++)
+                chatIds.next();
+
+            while (true) {
+                long position;
+                synchronized (this) {
+                    while (!cancelled && (paused || next - cursor >= done.length))
+                        wait();
+
+                    if (cancelled)
+                        break;
+
+                    position = next;
+                }
+
+                // the source is read outside the lock, it could be slow
+                if (!chatIds.hasNext())
+                    break;
+
+                Long chatId = chatIds.next();
+                synchronized (this) {
+                    next++;
+                }
+
+                send(position, chatId);
+            }
+        } catch (InterruptedException e) {
+            // stops reading, as if cancelled: completed once the queued recipients are done
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // the source failed: the checkpoint is still valid
+            synchronized (this) {
+                exhausted = true;
+            }
+            completion.completeExceptionally(e);
+            return;
+        }
+
+        synchronized (this) {
+            exhausted = true;
+            if (cursor == next)
+                completion.complete(null);
+        }
+    }
+
+    private void send(long position, Long chatId) {
+        BotApiMethod<? extends Serializable> method;
+        try {
+            method = template.apply(chatId);
+        } catch (RuntimeException e) {
+            done(position, failed);
+            return;
+        }
+
+        if (method == null) {
+            done(position, skipped);
+            return;
+        }
+
+        CompletableFuture<? extends Serializable> result;
+        try {
+            result = sender.requestExecuteAsync(chatId, method, Priority.BULK);
+        } catch (RuntimeException e) {
+            // not queued: this recipient failed, not the source
+            done(position, failed);
+            return;
+        }
+
+        result.whenComplete((value, e) -> done(position, e == null ? sent : failed));
+    }
+
+    /**
+     * @param outcome counter of the outcome
+     */
+    private void done(long position, LongAdder outcome) {
+        outcome.increment();
+
+        synchronized (this) {
+            done[(int) (position % done.length)] = true;
+
+            long before = cursor;
+            while (cursor < next && done[(int) (cursor % done.length)]) {
+                done[(int) (cursor % done.length)] = false;
+                cursor++;
+            }
+
+            if (cursor == before)
+                return;
+
+            notifyAll();
+
+            if (listener != null)
+                listener.onProgress(cursor, sent.sum(), failed.sum(), skipped.sum());
+
+            if (exhausted && cursor == next)
+                completion.complete(null);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package gekoramy.telegram.bot.timed;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Where Chats keeps the command which has to be completed by every chat, so it survives restarts and evictions
+ * Chats reads it on a cache miss only, and writes to it in batches from a background thread
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public interface ChatStateStore extends Closeable {
+
+    /**
+     * @param chatId chat
+     * @return the last command stored for the chat, null if none
+     */
+    String load(long chatId) throws IOException;
+
+    /**
+     * Called by a single thread at a time
+     *
+     * @param commands last command of every chat changed since the previous batch
+     */
+    void storeAll(Map<Long, String> commands) throws IOException;
+
+}
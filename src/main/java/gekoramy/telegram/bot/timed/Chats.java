@@ -1,11 +1,16 @@
 package gekoramy.telegram.bot.timed;
 
 import javax.validation.constraints.NotNull;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * When a new conversation with this bot is started
@@ -13,78 +18,322 @@ import java.util.concurrent.TimeUnit;
  * <p>
  * The command which has to be completed
  * The time of the updates received in the last 2 minute
+ * <p>
+ * Chats are split between stripes, each one guarded by its own lock and kept in access order:
+ * a chat is forgotten once idle for longer than idleTimeout,
+ * or when its stripe is full and it is the least recently used one
+ * <p>
+ * Optionally the commands are kept in a ChatStateStore too, so they survive restarts and evictions:
+ * the chats act as cache in front of it, and the changed commands are written behind,
+ * in batches, by a background thread (see flush())
+ * The command of a chat not remembered is read by getCommand(...) only, outside the lock of its stripe:
+ * the sender, counting the messages of a chat, never waits for the store
  *
  * @author Luca Mosetti
  * @since 2017
  */
 public class Chats {
 
-    private static final Map<Long, Bundle> chats = new HashMap<>();
+    private static final String DEFAULT_COMMAND = "start";
+    private static final long SENT_WINDOW = TimeUnit.MINUTES.toMillis(2);
+    private static final int SENT_WINDOW_BUCKETS = 24;
+    private static final int DEFAULT_MAX_CHATS = 1 << 20;
+    private static final long DEFAULT_IDLE_TIMEOUT = TimeUnit.DAYS.toMillis(1);
+    private static final int STRIPES = 16;
+    private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    private static final int MAX_BATCH = 1024;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final long idleTimeout;
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final ChatStateStore store;         // null if the commands are kept in memory only
+    private final ConcurrentHashMap<Long, String> dirty = new ConcurrentHashMap<>();   // commands not stored yet
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final LongAdder storeFailures = new LongAdder();
 
-    public static String getCommand(long chatId) {
-        chats.putIfAbsent(chatId, new Bundle("start"));
-        return chats.get(chatId).getCommand();
+    public Chats() {
+        this(DEFAULT_MAX_CHATS, DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
-    static void setCommand(long chatId, String command) {
-        chats.putIfAbsent(chatId, new Bundle(command));
-        chats.get(chatId).setCommand(command);
+    /**
+     * @param store where the commands are kept
+     */
+    public Chats(@NotNull ChatStateStore store) {
+        this(DEFAULT_MAX_CHATS, DEFAULT_IDLE_TIMEOUT, TimeUnit.MILLISECONDS, store);
     }
 
-    static synchronized void update(long chatId, long time) {
-        chats.putIfAbsent(chatId, new Bundle("start"));
-        chats.get(chatId).update(time);
+    /**
+     * @param maxChats    max chats remembered at the same time
+     * @param idleTimeout time after which an idle chat is forgotten (at least 2 minutes)
+     * @param timeUnit    idleTimeout unit
+     */
+    public Chats(int maxChats, long idleTimeout, @NotNull TimeUnit timeUnit) {
+        this(maxChats, idleTimeout, timeUnit, null);
     }
 
-    static synchronized int getSent(long chatId, long now) {
-        chats.putIfAbsent(chatId, new Bundle("start"));
-        return chats.get(chatId).getSent(now);
+    /**
+     * @param maxChats    max chats remembered at the same time
+     * @param idleTimeout time after which an idle chat is forgotten (at least 2 minutes)
+     * @param timeUnit    idleTimeout unit
+     * @param store       where the commands are kept, null to keep them in memory only
+     */
+    public Chats(int maxChats, long idleTimeout, @NotNull TimeUnit timeUnit, ChatStateStore store) {
+        if (maxChats < STRIPES)
+            throw new IllegalArgumentException("maxChats cannot be less than " + STRIPES);
+
+        if (timeUnit.toMillis(idleTimeout) < SENT_WINDOW)
+            throw new IllegalArgumentException("idleTimeout cannot be less than " + SENT_WINDOW + " ms");
+
+        this.idleTimeout = timeUnit.toMillis(idleTimeout);
+
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(maxChats / STRIPES);
+
+        this.store = store;
+        if (store == null) {
+            this.flusher = null;
+        } else {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Chats-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
-    private static final class Bundle {
-        private String command;
-        private final ExpirationQueue updatesExecuted;
+    public String getCommand(long chatId) {
+        Stripe stripe = stripe(chatId);
+        synchronized (stripe) {
+            String command = stripe.get(chatId, System.currentTimeMillis()).getCommand();
+            if (command != null)
+                return command;
+        }
 
-        private Bundle(String command) {
-            this.command = command;
-            this.updatesExecuted = new ExpirationQueue(2, TimeUnit.MINUTES);
+        String loaded = loadCommand(chatId);
+
+        synchronized (stripe) {
+            Bundle bundle = stripe.get(chatId, System.currentTimeMillis());
+            // unless set meanwhile
+            if (bundle.getCommand() == null)
+                bundle.setCommand(loaded);
+
+            return bundle.getCommand();
         }
+    }
 
-        private String getCommand() {
-            return command;
+    void setCommand(long chatId, String command) {
+        Stripe stripe = stripe(chatId);
+        synchronized (stripe) {
+            stripe.get(chatId, System.currentTimeMillis()).setCommand(command);
+
+            // under the same lock, so the store gets the last command set in memory
+            // the last command wins: a chat changing it many times is written once
+            if (store != null)
+                dirty.put(chatId, command);
         }
 
-        private void setCommand(String command) {
-            this.command = command;
+        if (store == null)
+            return;
+
+        if (dirty.size() >= MAX_BATCH && flushQueued.compareAndSet(false, true))
+            flusher.execute(() -> {
+                flushQueued.set(false);
+                flush();
+            });
+    }
+
+    /**
+     * Writes the changed commands to the ChatStateStore, if any
+     *
+     * @return false if the store failed, the commands are written by the next flush
+     */
+    public boolean flush() {
+        if (store == null)
+            return true;
+
+        synchronized (flushLock) {
+            if (dirty.isEmpty())
+                return true;
+
+            Map<Long, String> batch = new LinkedHashMap<>(dirty);
+            try {
+                store.storeAll(batch);
+            } catch (IOException | RuntimeException e) {
+                storeFailures.increment();
+                return false;
+            }
+
+            // the commands changed meanwhile stay dirty
+            for (Map.Entry<Long, String> entry : batch.entrySet())
+                dirty.remove(entry.getKey(), entry.getValue());
+
+            return true;
         }
+    }
 
-        private synchronized void update(long time) {
-            this.updatesExecuted.add(time);
+    /**
+     * Writes the changed commands and closes the ChatStateStore, if any
+     */
+    public void close() {
+        if (store == null)
+            return;
+
+        flusher.shutdown();
+        flush();
+
+        try {
+            store.close();
+        } catch (IOException e) {
+            storeFailures.increment();
         }
+    }
 
-        private synchronized int getSent(long time) {
-            return updatesExecuted.size(time);
+    void update(long chatId, long time) {
+        Stripe stripe = stripe(chatId);
+        synchronized (stripe) {
+            stripe.get(chatId, time).update(time);
+        }
+    }
+
+    int getSent(long chatId, long now) {
+        Stripe stripe = stripe(chatId);
+        synchronized (stripe) {
+            return stripe.get(chatId, now).getSent(now);
+        }
+    }
+
+    /**
+     * @return chats currently remembered, idle ones are dropped on the next access to their stripe
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
         }
+        return size;
     }
 
-    private static final class ExpirationQueue {
-        private final Queue<Long> updates = new LinkedList<>();
-        private final long duration;
+    /**
+     * @return chats forgotten because their stripe was full
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return chats forgotten because idle for longer than idleTimeout
+     */
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return reads and batches failed by the ChatStateStore
+     */
+    public long getStoreFailures() {
+        return storeFailures.sum();
+    }
+
+    /**
+     * @return command of a chat not remembered: the one not stored yet, or the stored one
+     */
+    private String loadCommand(long chatId) {
+        if (store == null)
+            return DEFAULT_COMMAND;
 
-        private ExpirationQueue(long duration, @NotNull TimeUnit timeUnit) {
-            this.duration = timeUnit.toMillis(duration);
+        String command = dirty.get(chatId);
+        if (command != null)
+            return command;
+
+        try {
+            command = store.load(chatId);
+        } catch (IOException | RuntimeException e) {
+            storeFailures.increment();
         }
 
-        private synchronized void add(long currentTime) {
-            updates.add(currentTime);
+        return command == null ? DEFAULT_COMMAND : command;
+    }
+
+    private Stripe stripe(long chatId) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 60) & (STRIPES - 1)];
+    }
+
+    private final class Stripe extends LinkedHashMap<Long, Bundle> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
         }
 
-        private synchronized int size(long time) {
-            while (updates.size() > 0 && updates.peek() + duration < time) {
-                updates.poll();
+        /**
+         * Forgets the expired chats, then returns the Bundle of chatId
+         */
+        private Bundle get(long chatId, long now) {
+            Iterator<Bundle> it = values().iterator();
+            while (it.hasNext()) {
+                Bundle eldest = it.next();
+                if (eldest.lastAccess + idleTimeout >= now)
+                    break;
+
+                it.remove();
+                expirations.increment();
+            }
+
+            Bundle bundle = super.get(chatId);
+            if (bundle == null) {
+                // the stored command is loaded by getCommand(...)
+                bundle = new Bundle(store == null ? DEFAULT_COMMAND : null);
+                put(chatId, bundle);
             }
 
-            return updates.size();
+            bundle.lastAccess = Math.max(bundle.lastAccess, now);
+            return bundle;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bundle> eldest) {
+            if (size() <= capacity)
+                return false;
+
+            evictions.increment();
+            return true;
+        }
+    }
+
+    private static final class Bundle {
+        private String command;                 // null if not loaded yet
+        private final SlidingWindowCounter updatesExecuted;
+        private long lastAccess;
+
+        private Bundle(String command) {
+            this.command = command;
+            this.updatesExecuted = new SlidingWindowCounter(SENT_WINDOW, SENT_WINDOW_BUCKETS, TimeUnit.MILLISECONDS);
+        }
+
+        private String getCommand() {
+            return command;
+        }
+
+        private void setCommand(String command) {
+            this.command = command;
+        }
+
+        private void update(long time) {
+            this.updatesExecuted.add(time);
+        }
+
+        private int getSent(long time) {
+            return updatesExecuted.size(time);
         }
     }
-}
\ No newline at end of file
+}
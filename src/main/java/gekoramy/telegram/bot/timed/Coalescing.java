@@ -0,0 +1,92 @@
+package gekoramy.telegram.bot.timed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.methods.send.SendChatAction;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageReplyMarkup;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+
+/**
+ * Merges a method with the one still waiting before it in the same chat, when sending both would be useless:
+ * - an EditMessageText replaces the previous edit of the same message (text and markup are both overwritten)
+ * - an EditMessageReplyMarkup replaces the previous EditMessageReplyMarkup of the same message,
+ * or sets its markup on a copy of the previous EditMessageText of the same message
+ * - a SendChatAction equal to the previous one is dropped
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class Coalescing {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private Coalescing() {
+    }
+
+    /**
+     * @param queued method still waiting
+     * @param next   method sent after queued
+     * @return the method to send in place of both, null if both have to be sent
+     */
+    static BotApiMethod<?> merge(BotApiMethod<?> queued, BotApiMethod<?> next) {
+        if (next instanceof SendChatAction && queued instanceof SendChatAction) {
+            SendChatAction a = (SendChatAction) queued;
+            SendChatAction b = (SendChatAction) next;
+            return Objects.equals(a.getChatId(), b.getChatId()) && Objects.equals(a.getAction(), b.getAction()) ? queued : null;
+        }
+
+        if (next instanceof EditMessageText) {
+            EditMessageText b = (EditMessageText) next;
+
+            if (queued instanceof EditMessageText) {
+                EditMessageText a = (EditMessageText) queued;
+                return sameMessage(a.getChatId(), a.getMessageId(), a.getInlineMessageId(), b.getChatId(), b.getMessageId(), b.getInlineMessageId()) ? next : null;
+            }
+
+            if (queued instanceof EditMessageReplyMarkup) {
+                EditMessageReplyMarkup a = (EditMessageReplyMarkup) queued;
+                return sameMessage(a.getChatId(), a.getMessageId(), a.getInlineMessageId(), b.getChatId(), b.getMessageId(), b.getInlineMessageId()) ? next : null;
+            }
+        }
+
+        if (next instanceof EditMessageReplyMarkup) {
+            EditMessageReplyMarkup b = (EditMessageReplyMarkup) next;
+
+            if (queued instanceof EditMessageReplyMarkup) {
+                EditMessageReplyMarkup a = (EditMessageReplyMarkup) queued;
+                return sameMessage(a.getChatId(), a.getMessageId(), a.getInlineMessageId(), b.getChatId(), b.getMessageId(), b.getInlineMessageId()) ? next : null;
+            }
+
+            if (queued instanceof EditMessageText) {
+                EditMessageText a = (EditMessageText) queued;
+                return sameMessage(a.getChatId(), a.getMessageId(), a.getInlineMessageId(), b.getChatId(), b.getMessageId(), b.getInlineMessageId()) ? copy(a).setReplyMarkup(b.getReplyMarkup()) : null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * The methods of the caller are never changed: it may still hold them, and the journal has them as they were
+     * Not every field has a getter, so the copy goes through JSON
+     */
+    private static EditMessageText copy(EditMessageText method) {
+        try {
+            return OBJECT_MAPPER.readValue(OBJECT_MAPPER.writeValueAsBytes(method), EditMessageText.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean sameMessage(String chatA, Integer messageA, String inlineA, String chatB, Integer messageB, String inlineB) {
+        if (inlineA != null || inlineB != null)
+            return Objects.equals(inlineA, inlineB);
+
+        return messageA != null && Objects.equals(chatA, chatB) && Objects.equals(messageA, messageB);
+    }
+}
@@ -0,0 +1,199 @@
+package gekoramy.telegram.bot.timed;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of (chatId, command) records: the last record of a chat wins
+ * The offset of the last record of every chat is kept in memory, so a load is a single positional read
+ * <p>
+ * Record: length, crc32, chatId, UTF-8 command
+ * On open the file is cut after the last valid record, dropping a batch torn by a crash
+ * <p>
+ * Once most of the records are overwritten, the last ones are copied to a new file which replaces the old one
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class FileChatStateStore implements ChatStateStore {
+
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final long MIN_COMPACT_RECORDS = 1 << 16;
+
+    private final File file;
+    private final boolean sync;
+    private final HashMap<Long, Long> offsets = new HashMap<>();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private long size;                          // bytes of valid records
+    private long records;                       // records in the file, overwritten ones included
+
+    /**
+     * Every batch is forced to the disk
+     */
+    public FileChatStateStore(File file) throws IOException {
+        this(file, true);
+    }
+
+    /**
+     * @param file where the commands are stored, created if missing
+     * @param sync true to force every batch to the disk, false to leave it in the page cache
+     */
+    public FileChatStateStore(File file, boolean sync) throws IOException {
+        this.file = file;
+        this.sync = sync;
+        open();
+    }
+
+    @Override
+    public synchronized String load(long chatId) throws IOException {
+        Long offset = offsets.get(chatId);
+        if (offset == null)
+            return null;
+
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length, offset);
+
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0) - HEADER);
+        readFully(record, offset + HEADER);
+        return new String(record.array(), StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void storeAll(Map<Long, String> commands) throws IOException {
+        if (commands.isEmpty())
+            return;
+
+        byte[][] utf8 = new byte[commands.size()][];
+        int bytes = 0;
+        int i = 0;
+        for (String command : commands.values()) {
+            utf8[i] = command.getBytes(StandardCharsets.UTF_8);
+            bytes += HEADER + utf8[i++].length;
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(bytes);
+        i = 0;
+        for (Long chatId : commands.keySet())
+            put(batch, chatId, utf8[i++]);
+
+        batch.flip();
+        long position = size;
+        while (batch.hasRemaining())
+            position += channel.write(batch, position);
+
+        if (sync)
+            channel.force(false);
+
+        long offset = size;
+        i = 0;
+        for (Long chatId : commands.keySet()) {
+            offsets.put(chatId, offset);
+            offset += HEADER + utf8[i++].length;
+        }
+
+        size = position;
+        records += commands.size();
+
+        if (records > MIN_COMPACT_RECORDS && records > 2L * offsets.size())
+            compact();
+    }
+
+    /**
+     * @return chats stored
+     */
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        offsets.clear();
+        size = 0;
+        records = 0;
+
+        long length = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (size + HEADER <= length) {
+            header.clear();
+            readFully(header, size);
+
+            int recordLength = header.getInt(0);
+            if (recordLength < HEADER || size + recordLength > length)
+                break;
+
+            ByteBuffer command = ByteBuffer.allocate(recordLength - HEADER);
+            readFully(command, size + HEADER);
+
+            long chatId = header.getLong(2 * Integer.BYTES);
+            if (checksum(chatId, command.array()) != header.getInt(Integer.BYTES))
+                break;
+
+            offsets.put(chatId, size);
+            size += recordLength;
+            records++;
+        }
+
+        // a torn batch would hide the next ones
+        if (size < length)
+            channel.truncate(size);
+    }
+
+    private void compact() throws IOException {
+        File compacted = new File(file.getPath() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Long chatId : offsets.keySet()) {
+                byte[] command = load(chatId).getBytes(StandardCharsets.UTF_8);
+                ByteBuffer record = ByteBuffer.allocate(HEADER + command.length);
+                put(record, chatId, command);
+                record.flip();
+                while (record.hasRemaining())
+                    out.write(record);
+            }
+            out.force(false);
+        }
+
+        channel.close();
+        try {
+            Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // the old file, if not replaced
+            open();
+        }
+    }
+
+    private void put(ByteBuffer buffer, long chatId, byte[] command) {
+        buffer.putInt(HEADER + command.length).putInt(checksum(chatId, command)).putLong(chatId).put(command);
+    }
+
+    private int checksum(long chatId, byte[] command) {
+        crc.reset();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, chatId).array());
+        crc.update(command);
+        return (int) crc.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of " + file);
+
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package gekoramy.telegram.bot.timed;
+
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The first answer requested while handling a webhook update, without waiting for its result:
+ * instead of being queued it is sent as response of the webhook, saving a request to Telegram
+ * Once taken, the answers requested later are queued as usual
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class InlineReply {
+
+    private BotApiMethod<?> method;
+    private boolean handled;
+    private boolean taken;
+
+    /**
+     * @return true if the method will be sent inline
+     */
+    synchronized boolean offer(BotApiMethod<?> method) {
+        if (taken || this.method != null)
+            return false;
+
+        this.method = method;
+        return true;
+    }
+
+    synchronized void handled() {
+        handled = true;
+        notifyAll();
+    }
+
+    /**
+     * Waits for the update to be handled, at most timeout
+     *
+     * @return the answer to send inline, null if none
+     */
+    public synchronized BotApiMethod<?> take(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        long wait;
+        while (!handled && (wait = deadline - System.nanoTime()) > 0)
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+
+        taken = true;
+        return method;
+    }
+}
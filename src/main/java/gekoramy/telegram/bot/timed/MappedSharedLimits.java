@@ -0,0 +1,175 @@
+package gekoramy.telegram.bot.timed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SharedLimits of the nodes mapping the same file, each one through its own instance
+ * Every operation holds an exclusive FileLock on the file,
+ * and a lock of the JVM on its path, since a FileLock doesn't exclude the channels of the same JVM
+ * <p>
+ * The bucket is a single 'theoretical arrival time' (GCRA):
+ * a token is taken if it isn't later than now + the burst, then it moves forward by the interval between tokens
+ * <p>
+ * The leases are an open addressing table of (chatId, node, expiration) slots:
+ * an expired slot can be taken by any chat, an empty one ends the probing
+ * A chat is kept within MAX_PROBES slots from its own, so expired slots never make the probing longer
+ * The leases of a node are released when it is closed
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public final class MappedSharedLimits implements SharedLimits {
+
+    private static final int ARRIVAL = 0;
+    private static final int TABLE = Long.BYTES;
+    private static final int SLOT = 3 * Long.BYTES;     // chatId, node, expiration (0 if empty)
+    private static final int CHAT = 0;
+    private static final int NODE = Long.BYTES;
+    private static final int EXPIRATION = 2 * Long.BYTES;
+    private static final int MAX_PROBES = 64;
+    private static final int MAX_CHATS = 1 << 24;      // the slots must stay addressable by an int offset
+    private static final ConcurrentHashMap<String, Object> MUTEXES = new ConcurrentHashMap<>();
+
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+    private final long interval;                // micros between tokens
+    private final long burst;                   // micros of tokens which can be taken ahead
+    private final long node;
+    private final Object mutex;
+
+    /**
+     * @param file             shared by the nodes, created if missing
+     * @param permitsPerSecond tokens gained every second, by all the nodes together
+     * @param capacity         max tokens which can be taken at once (burst)
+     * @param maxChats         chats leased at the same time, the same for every node
+     */
+    public MappedSharedLimits(File file, long permitsPerSecond, long capacity, int maxChats) throws IOException {
+        if (permitsPerSecond < 1 || permitsPerSecond > TimeUnit.SECONDS.toMicros(1))
+            throw new IllegalArgumentException("permitsPerSecond must be between 1 and " + TimeUnit.SECONDS.toMicros(1));
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        if (maxChats < 1 || maxChats > MAX_CHATS)
+            throw new IllegalArgumentException("maxChats must be between 1 and " + MAX_CHATS);
+
+        // half full at most, so that probing stays short
+        this.slots = Integer.highestOneBit(maxChats) << 2;
+        this.interval = TimeUnit.SECONDS.toMicros(1) / permitsPerSecond;
+        this.burst = (capacity - 1) * interval;
+
+        long random;
+        do {
+            random = new SecureRandom().nextLong();
+        } while (random == 0);
+        this.node = random;
+
+        this.mutex = MUTEXES.computeIfAbsent(file.getCanonicalPath(), path -> new Object());
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, TABLE + (long) slots * SLOT);
+    }
+
+    @Override
+    public long tryAcquire(long now) throws IOException {
+        long micros = TimeUnit.MILLISECONDS.toMicros(now);
+
+        synchronized (mutex) {
+            FileLock lock = channel.lock();
+            try {
+                long arrival = Math.max(buffer.getLong(ARRIVAL), micros);
+                if (arrival - micros > burst)
+                    return Math.max(1, TimeUnit.MICROSECONDS.toMillis(arrival - micros - burst));
+
+                buffer.putLong(ARRIVAL, arrival + interval);
+                return 0;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    @Override
+    public boolean tryLease(long chatId, long now, long ttl) throws IOException {
+        synchronized (mutex) {
+            FileLock lock = channel.lock();
+            try {
+                int free = -1;
+                int slot = slot(chatId);
+                for (int i = 0; i < Math.min(MAX_PROBES, slots); i++, slot = (slot + 1) & (slots - 1)) {
+                    int offset = TABLE + slot * SLOT;
+                    long expiration = buffer.getLong(offset + EXPIRATION);
+
+                    if (expiration != 0 && buffer.getLong(offset + CHAT) == chatId) {
+                        if (expiration > now && buffer.getLong(offset + NODE) != node)
+                            return false;
+
+                        lease(offset, chatId, now + ttl);
+                        return true;
+                    }
+
+                    if (expiration <= now && free < 0)
+                        free = offset;
+
+                    // the chat would have been put before
+                    if (expiration == 0)
+                        break;
+                }
+
+                // too many chats leased around this one
+                if (free < 0)
+                    return false;
+
+                lease(free, chatId, now + ttl);
+                return true;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /**
+     * Releases the leases of this node, then closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (mutex) {
+            try {
+                FileLock lock = channel.lock();
+                try {
+                    for (int slot = 0; slot < slots; slot++) {
+                        int offset = TABLE + slot * SLOT;
+                        // expired, but not empty: the probing of other chats goes on
+                        if (buffer.getLong(offset + EXPIRATION) != 0 && buffer.getLong(offset + NODE) == node)
+                            buffer.putLong(offset + EXPIRATION, 1);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    private void lease(int offset, long chatId, long expiration) {
+        buffer.putLong(offset + CHAT, chatId);
+        buffer.putLong(offset + NODE, node);
+        buffer.putLong(offset + EXPIRATION, expiration);
+    }
+
+    private int slot(long chatId) {
+        long h = chatId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (slots - 1);
+    }
+}
@@ -0,0 +1,291 @@
+package gekoramy.telegram.bot.timed;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of the methods waiting to be sent, split in memory-mapped segments
+ * A method is appended when queued and acknowledged once executed (or failed for good):
+ * the methods without acknowledgement are replayed, in the same order, when the journal is opened again
+ * <p>
+ * Record: length, crc32, type, sequence, [chatId, priority, class name, json]
+ * The length is written last, so a record torn by a crash is never read
+ * <p>
+ * Segments are numbered in order of creation, a segment is deleted once all its methods are acknowledged and the following segments are in use
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class OutboundJournal implements Closeable {
+
+    private static final byte METHOD = 1;
+    private static final byte ACK = 2;
+    private static final int HEADER = Integer.BYTES + Integer.BYTES + Byte.BYTES + Long.BYTES;
+    private static final int METHOD_HEADER = Long.BYTES + Byte.BYTES + Short.BYTES;
+    private static final int MIN_SEGMENT_BYTES = 64 * 1024;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final File directory;
+    private final int segmentBytes;
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();         // by number
+    private final TreeMap<Long, Segment> owners = new TreeMap<>();           // by first method sequence
+    private final List<Entry> pending = new ArrayList<>();
+    private final CRC32 crc = new CRC32();
+    private Segment active;
+    private long nextSequence = 1;
+
+    /**
+     * Method appended and not yet acknowledged
+     */
+    static final class Entry {
+        final long sequence;
+        final long chatId;
+        final Priority priority;
+        final BotApiMethod<?> method;
+
+        private Entry(long sequence, long chatId, Priority priority, BotApiMethod<?> method) {
+            this.sequence = sequence;
+            this.chatId = chatId;
+            this.priority = priority;
+            this.method = method;
+        }
+    }
+
+    /**
+     * Opens the journal, reading the methods not acknowledged by the previous run
+     *
+     * @param directory    directory of the segments, created if missing
+     * @param segmentBytes size of a segment, it limits the size of a single method too
+     */
+    OutboundJournal(File directory, int segmentBytes) throws IOException {
+        if (segmentBytes < MIN_SEGMENT_BYTES)
+            throw new IllegalArgumentException("segmentBytes cannot be less than " + MIN_SEGMENT_BYTES);
+
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create " + directory);
+
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                long number = Long.parseLong(file.getName().substring(PREFIX.length(), file.getName().length() - SUFFIX.length()));
+                segments.put(number, new Segment(file, (int) file.length()));
+            }
+        }
+
+        replay();
+        deleteAcknowledged();
+    }
+
+    /**
+     * @return methods not acknowledged by the previous run, in order of append
+     */
+    List<Entry> getPending() {
+        return Collections.unmodifiableList(pending);
+    }
+
+    /**
+     * @return sequence of the method, to acknowledge it
+     */
+    synchronized long append(long chatId, Priority priority, BotApiMethod<?> method) throws IOException {
+        byte[] type = method.getClass().getName().getBytes(StandardCharsets.UTF_8);
+        byte[] json = objectMapper.writeValueAsBytes(method);
+
+        ByteBuffer body = ByteBuffer.allocate(METHOD_HEADER + type.length + json.length);
+        body.putLong(chatId).put((byte) priority.ordinal()).putShort((short) type.length).put(type).put(json);
+
+        long sequence = nextSequence++;
+        Segment segment = write(METHOD, sequence, body.array());
+        segment.own(sequence);
+        segment.live++;
+        return sequence;
+    }
+
+    synchronized void ack(long sequence) throws IOException {
+        write(ACK, sequence, new byte[0]);
+
+        Map.Entry<Long, Segment> owner = owners.floorEntry(sequence);
+        if (owner != null && owner.getValue().live > 0) {
+            owner.getValue().live--;
+            deleteAcknowledged();
+        }
+    }
+
+    /**
+     * @return the segment holding the record
+     */
+    private Segment write(byte type, long sequence, byte[] body) throws IOException {
+        int length = HEADER + body.length;
+        // a segment always ends with the length 0 of the next record
+        if (length + Integer.BYTES > segmentBytes)
+            throw new IOException("Record of " + length + " bytes cannot fit a segment of " + segmentBytes + " bytes");
+
+        if (active == null || active.position + length + Integer.BYTES > active.buffer.capacity()) {
+            long number = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+            active = new Segment(new File(directory, PREFIX + number + SUFFIX), segmentBytes);
+            segments.put(number, active);
+        }
+
+        int offset = active.position;
+        ByteBuffer buffer = active.buffer.duplicate();
+        buffer.position(offset + Integer.BYTES + Integer.BYTES);
+        buffer.put(type).putLong(sequence).put(body);
+
+        crc.reset();
+        crc.update(type);
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence).array());
+        crc.update(body);
+        active.buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+
+        // written last: the record exists only once complete
+        active.buffer.putInt(offset, length);
+        active.position += length;
+        return active;
+    }
+
+    private void replay() throws IOException {
+        Map<Long, int[]> methods = new LinkedHashMap<>();
+        Map<Long, Segment> owner = new TreeMap<>();
+
+        for (Segment segment : segments.values()) {
+            int offset = 0;
+            while (offset + HEADER <= segment.buffer.capacity()) {
+                int length = segment.buffer.getInt(offset);
+                if (length < HEADER || offset + length > segment.buffer.capacity() || !valid(segment.buffer, offset, length))
+                    break;
+
+                byte type = segment.buffer.get(offset + 2 * Integer.BYTES);
+                long sequence = segment.buffer.getLong(offset + 2 * Integer.BYTES + Byte.BYTES);
+
+                if (type == METHOD) {
+                    methods.put(sequence, new int[]{offset, length});
+                    owner.put(sequence, segment);
+                    segment.own(sequence);
+                    segment.live++;
+                } else if (type == ACK && methods.remove(sequence) != null) {
+                    owner.remove(sequence).live--;
+                }
+
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                offset += length;
+            }
+
+            segment.position = offset;
+            active = segment;
+        }
+
+        for (Map.Entry<Long, int[]> method : methods.entrySet()) {
+            Segment segment = owner.get(method.getKey());
+            Entry entry = read(segment.buffer, method.getKey(), method.getValue()[0], method.getValue()[1]);
+            if (entry == null) {
+                // unreadable, it would never be sent
+                segment.live--;
+                continue;
+            }
+
+            pending.add(entry);
+        }
+    }
+
+    private boolean valid(MappedByteBuffer buffer, int offset, int length) {
+        byte[] record = new byte[length - 2 * Integer.BYTES];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 2 * Integer.BYTES);
+        view.get(record);
+
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+    }
+
+    private Entry read(MappedByteBuffer buffer, long sequence, int offset, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + HEADER);
+
+        long chatId = view.getLong();
+        int priority = view.get();
+        byte[] type = new byte[view.getShort()];
+        view.get(type);
+        byte[] json = new byte[length - HEADER - METHOD_HEADER - type.length];
+        view.get(json);
+
+        try {
+            Class<?> clazz = Class.forName(new String(type, StandardCharsets.UTF_8), false, BotApiMethod.class.getClassLoader());
+            if (!BotApiMethod.class.isAssignableFrom(clazz) || priority < 0 || priority >= PRIORITIES.length)
+                return null;
+
+            return new Entry(sequence, chatId, PRIORITIES[priority], (BotApiMethod<?>) objectMapper.readValue(json, clazz));
+        } catch (ClassNotFoundException | IOException e) {
+            return null;
+        }
+    }
+
+    private void deleteAcknowledged() throws IOException {
+        Iterator<Segment> it = segments.values().iterator();
+        while (it.hasNext()) {
+            Segment segment = it.next();
+            if (segment == active || segment.live > 0)
+                return;
+
+            it.remove();
+            owners.remove(segment.firstSequence);
+            if (!segment.file.delete())
+                throw new IOException("Unable to delete " + segment.file);
+        }
+    }
+
+    /**
+     * The segments stay on disk, to be replayed
+     */
+    @Override
+    public synchronized void close() {
+        for (Segment segment : segments.values())
+            segment.buffer.force();
+    }
+
+    private final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private long firstSequence = -1;        // of the first method, -1 if it holds acknowledgements only
+        private int position;
+        private int live;                       // methods not acknowledged
+
+        private Segment(File file, int bytes) throws IOException {
+            this.file = file;
+
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        }
+
+        private void own(long sequence) {
+            if (firstSequence < 0) {
+                firstSequence = sequence;
+                owners.put(sequence, this);
+            }
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package gekoramy.telegram.bot.timed;
+
+/**
+ * Lane of a method in the send queue
+ * Lanes share the global rate limit by weight, and inside a chat a higher lane is served first
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public enum Priority {
+
+    // replies to an update: someone is waiting for them
+    INTERACTIVE,
+
+    // default
+    NORMAL,
+
+    // mass sends: nobody is waiting for a single one of them
+    BULK
+
+}
@@ -0,0 +1,101 @@
+package gekoramy.telegram.bot.timed;
+
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides if and when a failed method has to be executed again:
+ * - flood wait (429): after the retry_after seconds told by Telegram
+ * - server (5xx) and network errors: after a jittered exponential backoff
+ * - anything else (400, 403, ...): never, it would fail again
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class RetryPolicy {
+
+    static final int NO_RETRY = -1;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int SERVER_ERROR = 500;
+
+    // "Too Many Requests: retry after 35", when the parameters are missing
+    private static final Pattern RETRY_AFTER = Pattern.compile("retry after (\\d+)");
+
+    private final int maxAttempts;
+    private final long baseBackoff;
+    private final long maxBackoff;
+
+    /**
+     * @param maxAttempts max executions of the same method
+     * @param baseBackoff backoff after the first failure, doubled at each attempt
+     * @param maxBackoff  max backoff
+     * @param timeUnit    backoff unit
+     */
+    RetryPolicy(int maxAttempts, long baseBackoff, long maxBackoff, TimeUnit timeUnit) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be positive");
+
+        if (baseBackoff < 1 || maxBackoff < baseBackoff)
+            throw new IllegalArgumentException("baseBackoff must be positive and not greater than maxBackoff");
+
+        this.maxAttempts = maxAttempts;
+        this.baseBackoff = timeUnit.toMillis(baseBackoff);
+        this.maxBackoff = timeUnit.toMillis(maxBackoff);
+    }
+
+    /**
+     * @param e       why the method failed
+     * @param attempt executions of the method, the failed one included
+     * @return ms to wait before executing the method again, NO_RETRY if it shouldn't
+     */
+    long getDelay(Exception e, int attempt) {
+        if (attempt >= maxAttempts)
+            return NO_RETRY;
+
+        long retryAfter = getRetryAfter(e);
+        if (retryAfter >= 0)
+            return retryAfter;
+
+        if (!isServerError(e) && !isNetworkError(e))
+            return NO_RETRY;
+
+        // equal jitter: half fixed, half random, so the retries of many chats don't hit together
+        long backoff = Math.min(maxBackoff, baseBackoff << Math.min(attempt - 1, 30));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    /**
+     * @return ms asked by Telegram to wait, -1 if it isn't a flood wait
+     */
+    static long getRetryAfter(Exception e) {
+        if (!(e instanceof TelegramApiRequestException))
+            return -1;
+
+        TelegramApiRequestException request = (TelegramApiRequestException) e;
+        if (request.getErrorCode() == null || request.getErrorCode() != TOO_MANY_REQUESTS)
+            return -1;
+
+        if (request.getParameters() != null && request.getParameters().getRetryAfter() != null)
+            return TimeUnit.SECONDS.toMillis(request.getParameters().getRetryAfter());
+
+        Matcher matcher = RETRY_AFTER.matcher(String.valueOf(request.getApiResponse()));
+        return matcher.find() ? TimeUnit.SECONDS.toMillis(Long.parseLong(matcher.group(1))) : TimeUnit.SECONDS.toMillis(1);
+    }
+
+    private static boolean isServerError(Exception e) {
+        return e instanceof TelegramApiRequestException
+                && ((TelegramApiRequestException) e).getErrorCode() != null
+                && ((TelegramApiRequestException) e).getErrorCode() >= SERVER_ERROR;
+    }
+
+    private static boolean isNetworkError(Exception e) {
+        // a response which can't be read is not retried: the method could have been executed
+        return !(e instanceof TelegramApiRequestException) && e.getCause() instanceof IOException;
+    }
+}
@@ -0,0 +1,37 @@
+package gekoramy.telegram.bot.timed;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Limits shared by the nodes sending with the same bot token
+ * - a global token bucket, so all the nodes together respect MANY_CHATS_MESSAGES_PER_SECOND
+ * - a lease on every chat: only its owner sends to it, so the limits of a chat can be checked locally
+ * <p>
+ * Times are System.currentTimeMillis(), the nodes are expected to share a clock
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public interface SharedLimits extends Closeable {
+
+    /**
+     * Takes a token from the bucket shared by all the nodes
+     *
+     * @param now current time
+     * @return 0 if the token has been taken, otherwise the ms to wait before trying again
+     */
+    long tryAcquire(long now) throws IOException;
+
+    /**
+     * Takes or renews the lease of the chat, which lasts ttl ms from now
+     * The owner can cut its lease passing a shorter ttl
+     *
+     * @param chatId chat
+     * @param now    current time
+     * @param ttl    lease duration
+     * @return false if another node owns the chat
+     */
+    boolean tryLease(long chatId, long now, long ttl) throws IOException;
+
+}
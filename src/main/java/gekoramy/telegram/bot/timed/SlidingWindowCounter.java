@@ -0,0 +1,66 @@
+package gekoramy.telegram.bot.timed;
+
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts the events of the last 'duration' ms
+ * Events are grouped in a fixed ring of buckets, so it neither allocates nor walks the single events:
+ * an event is counted for at least 'duration' ms and at most one more bucket
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class SlidingWindowCounter {
+
+    private final int[] buckets;
+    private final long bucketDuration;
+
+    private long current;   // absolute index of the newest bucket
+    private int total;
+
+    /**
+     * @param duration window length
+     * @param buckets  buckets in which the window is split
+     * @param timeUnit duration unit
+     */
+    SlidingWindowCounter(long duration, int buckets, @NotNull TimeUnit timeUnit) {
+        if (buckets < 1 || timeUnit.toMillis(duration) < buckets)
+            throw new IllegalArgumentException("duration must be at least 1 ms per bucket");
+
+        // one more bucket, the newest one, which is partially filled
+        this.buckets = new int[buckets + 1];
+        this.bucketDuration = (timeUnit.toMillis(duration) + buckets - 1) / buckets;
+    }
+
+    void add(long time) {
+        long index = time / bucketDuration;
+        advance(index);
+
+        // too old, already out of the window
+        if (index <= current - buckets.length)
+            return;
+
+        buckets[(int) (index % buckets.length)]++;
+        total++;
+    }
+
+    int size(long time) {
+        advance(time / bucketDuration);
+        return total;
+    }
+
+    private void advance(long index) {
+        if (index <= current)
+            return;
+
+        long steps = Math.min(index - current, buckets.length);
+        for (long i = 1; i <= steps; i++) {
+            int slot = (int) ((current + i) % buckets.length);
+            total -= buckets[slot];
+            buckets[slot] = 0;
+        }
+
+        current = index;
+    }
+}
@@ -1,197 +1,977 @@
 package gekoramy.telegram.bot.timed;
 
+import gekoramy.telegram.bot.metrics.MetricsRegistry;
+import gekoramy.telegram.bot.util.Histogram;
 import org.telegram.telegrambots.api.methods.*;
 import org.telegram.telegrambots.bots.DefaultAbsSender;
 import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.exceptions.TelegramApiException;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Execute methods respecting the Telegram limits:
- * - MANY_CHATS_SEND_INTERVAL ms between messages
+ * - MANY_CHATS_MESSAGES_PER_SECOND messages per second, shared by all the chats
  * - ONE_CHAT_SEND_INTERVAL ms between messages to same chat
  * - maxMessagesPerMinute (default 10, Telegram says that shouldn't be more than 20)
+ * <p>
+ * Every MessageQueue is scheduled on the time it will be allowed to send, so idle chats cost nothing:
+ * a dispatcher thread waits for the first chat allowed to send and hands its message to a pool of workers.
+ * A MessageQueue is owned by at most one worker at a time,
+ * so the messages to the same chat keep their order while slow round-trips to different chats overlap
+ * <p>
+ * Optionally the methods are executed through a non-blocking http client (see setAsyncTransport(...)):
+ * the round-trips don't hold any worker, so the throughput is bounded by the Telegram limits only
+ * <p>
+ * A method failed because of a flood wait, a server or a network error is put back at the head of its MessageQueue,
+ * which isn't served until the retry_after told by Telegram, or a jittered exponential backoff, is elapsed.
+ * A flood wait on the queue without chat (-1) pauses all the chats
+ * <p>
+ * A method which makes useless the last one still waiting in the same chat (answers aside) is merged with it,
+ * so bursts of edits to the same message spend a single send (see Coalescing)
+ * <p>
+ * Every method has a Priority: the chats ready to send wait in the lane of their most urgent method,
+ * and the dispatcher serves the lanes by weight (stride scheduling), so a mass send can't starve the replies
+ * <p>
+ * Optionally the queued methods are written to a journal (see setJournal(...)) and acknowledged once done:
+ * the ones still pending when the process stops are sent at the next start
+ * <p>
+ * Optionally the limits are shared with other nodes sending with the same token (see setSharedLimits(...)):
+ * a node sends to a chat only while it holds its lease, renewed at every send and lasting CHAT_LEASE ms,
+ * so the limits of the chat stay local while the global one is a token bucket shared by the nodes.
+ * Once the queue of the chat is empty the lease is cut to ONE_CHAT_SEND_INTERVAL after the last send,
+ * so another node can reply soon: the messages per minute of a chat are then counted by every node on its own.
+ * The conversation state (Chats) isn't shared: the updates of a chat have to reach the same node,
+ * or the Chats of every node need a ChatStateStore on a shared backend
+ * <p>
+ * Queue waits, execution latencies by method, depths, retries and flood waits are kept in getMetrics()
  *
  * @author Luca Mosetti
  * @since 2017
  */
 public abstract class TimedDefaultAbsSender extends DefaultAbsSender implements TimedSender {
 
-    private static final long MANY_CHATS_SEND_INTERVAL = TimeUnit.MILLISECONDS.toMillis(33);
+    private static final long MANY_CHATS_MESSAGES_PER_SECOND = 30;
     private static final long ONE_CHAT_SEND_INTERVAL = TimeUnit.SECONDS.toMillis(1);
     private static final long CHAT_INACTIVE_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+    private static final long NO_CHAT = -1L;
+    private static final long STRIDE = 1 << 20;
+    private static final Priority[] PRIORITIES = Priority.values();
+    private static final int JOURNAL_SEGMENT_BYTES = 16 * 1024 * 1024;
+    // as long as the window of Chats.getSent(...): a new owner doesn't need the sends of the previous one
+    private static final long CHAT_LEASE = TimeUnit.MINUTES.toMillis(2);
+    private static final ThreadLocal<InlineReply> INLINE_REPLY = new ThreadLocal<>();
+
+    // DefaultAbsSender's http client keeps 2 connections per route
+    protected static final int DEFAULT_SENDER_THREADS = 2;
 
     // Some methods are not limited
     private static final List<String> NO_WAIT_NO_TRACK = Arrays.asList(AnswerCallbackQuery.PATH, AnswerInlineQuery.PATH, AnswerPreCheckoutQuery.PATH, AnswerShippingQuery.PATH);
 
     private final long maxMessagesPerMinute;
+    private final Chats chats;
 
     private final ConcurrentHashMap<Long, MessageQueue> mMessagesMap = new ConcurrentHashMap<>(32, 0.75f, 1);
-    private final ArrayList<MessageQueue> mSendQueues = new ArrayList<>();
-    private final AtomicBoolean mSendRequested = new AtomicBoolean(false);
+    private final DelayQueue<Ticket> mTickets = new DelayQueue<>();
+    private final TokenBucket mTokenBucket;
+    private final ExecutorService mSenders;
+    private final ExecutorService mDispatcher = Executors.newSingleThreadExecutor();
+    private volatile AsyncTransport mTransport;
+    private volatile OutboundJournal mJournal;
+    private volatile SharedLimits mSharedLimits;
+    private volatile RetryPolicy mRetryPolicy = new RetryPolicy(5, 1, 60, TimeUnit.SECONDS);
+    private final AtomicLong mGlobalRetryTime = new AtomicLong();    // no chat is served before
+    private final MetricsRegistry mMetrics = new MetricsRegistry();
+    private final LongAdder mRetries = mMetrics.counter("telegram_retries_total", "Methods put back in their queue after a failure");
+    private final LongAdder mCoalesced = mMetrics.counter("telegram_coalesced_total", "Methods merged with another one waiting in the same chat");
+    private final LongAdder mFloodWaits = mMetrics.counter("telegram_flood_waits_total", "Methods failed with 429 Too Many Requests");
+    private final LongAdder mFailures = mMetrics.counter("telegram_failures_total", "Methods failed for good");
+    private final ConcurrentHashMap<String, Histogram> mExecuteTime = new ConcurrentHashMap<>();
+    private final Lane[] mLanes = new Lane[PRIORITIES.length];
+    private long mVirtualTime;                  // pass of the last lane served, only the dispatcher uses it
+
+    /**
+     * @param options              bot options
+     * @param maxMessagesPerMinute max messages per minute to the same chat
+     * @param senderThreads        workers executing the methods concurrently
+     * @param chats                state of the chats
+     */
+    TimedDefaultAbsSender(DefaultBotOptions options, long maxMessagesPerMinute, int senderThreads, Chats chats) {
+        this(options, maxMessagesPerMinute, senderThreads, chats, new TokenBucket(MANY_CHATS_MESSAGES_PER_SECOND, MANY_CHATS_MESSAGES_PER_SECOND));
+    }
 
-    TimedDefaultAbsSender(DefaultBotOptions options, long maxMessagesPerMinute) {
+    /**
+     * @param tokenBucket global limit, shared by all the chats
+     */
+    TimedDefaultAbsSender(DefaultBotOptions options, long maxMessagesPerMinute, int senderThreads, Chats chats, TokenBucket tokenBucket) {
         super(options);
+        if (senderThreads < 1)
+            throw new IllegalArgumentException("senderThreads must be positive");
+
         this.maxMessagesPerMinute = maxMessagesPerMinute < 10 ? 10 : maxMessagesPerMinute;
+        this.chats = chats;
+        this.mTokenBucket = tokenBucket;
+        this.mSenders = Executors.newFixedThreadPool(senderThreads);
+
+        for (int i = 0; i < mLanes.length; i++)
+            mLanes[i] = new Lane(PRIORITIES[i]);
+        setPriorityWeights(6, 3, 1);
 
-        // checks if there is to execute, and eventually executes, a method every MANY_CHATS_SEND_INTERVAL ms
-        Executors.newSingleThreadScheduledExecutor().scheduleWithFixedDelay(
-                new MessageSenderRunnable(),
-                MANY_CHATS_SEND_INTERVAL,
-                MANY_CHATS_SEND_INTERVAL,
-                TimeUnit.MILLISECONDS
-        );
+        mMetrics.gauge("telegram_in_flight", "Requests waiting for a response", this::getInFlight);
+        mMetrics.gauge("chats_size", "Chats remembered", chats::size);
+        mMetrics.counter("chats_evictions_total", "Chats forgotten because their stripe was full", chats::getEvictions);
+        mMetrics.counter("chats_expirations_total", "Chats forgotten because idle", chats::getExpirations);
+
+        // dispatches a method as soon as its chat and the global rate limit allow it
+        mDispatcher.execute(new MessageDispatcherRunnable());
     }
 
     protected abstract void onFailure(Exception e);
 
-    private synchronized <T extends Serializable, M extends BotApiMethod<T>> void syncExecute(long chatId, M method) {
+    @Override
+    public Chats getChats() {
+        return chats;
+    }
+
+    /**
+     * Optional: executes the methods through a non-blocking http client, instead of the blocking execute(...)
+     * The workers only handle the results, so they can be few even with many requests in flight
+     *
+     * @param maxInFlight max requests waiting for a response, each one on its own pooled connection
+     */
+    protected void setAsyncTransport(int maxInFlight) {
+        if (mTransport != null)
+            throw new IllegalStateException("async transport already set");
+
+        mTransport = new AsyncTransport(getOptions().getRequestConfig(), maxInFlight);
+    }
+
+    /**
+     * Optional: writes the queued methods to memory-mapped segments in the directory, until they are done
+     * The methods left pending by the previous run (crash or shutdown) are queued again, in order, without result
+     * Should be called before any request
+     *
+     * @param directory directory of the journal, created if missing
+     */
+    protected void setJournal(File directory) throws IOException {
+        if (mJournal != null)
+            throw new IllegalStateException("journal already set");
+
+        OutboundJournal journal = new OutboundJournal(directory, JOURNAL_SEGMENT_BYTES);
+        mJournal = journal;
+
+        for (OutboundJournal.Entry entry : journal.getPending()) {
+            Request<?> request = new Request<>(entry.method, null, entry.priority);
+            request.sequences = new long[]{entry.sequence};
+            enqueue(entry.chatId, request);
+        }
+    }
+
+    /**
+     * Optional: respects the limits together with the other nodes sending with the same token
+     * The methods to a chat leased by another node wait until its lease expires:
+ * up to ONE_CHAT_SEND_INTERVAL ms after its last send once it has nothing else queued, CHAT_LEASE ms otherwise
+     * Answers are neither limited nor leased
+     *
+     * @param sharedLimits limits shared by the nodes, closed by shutdownSender()
+     */
+    protected void setSharedLimits(SharedLimits sharedLimits) {
+        if (mSharedLimits != null)
+            throw new IllegalStateException("shared limits already set");
+
+        mSharedLimits = sharedLimits;
+    }
+
+    /**
+     * Replaces the default policy: 5 attempts, backoff from 1 second up to 1 minute
+     * Flood waits are always retried after the retry_after told by Telegram, within maxAttempts
+     *
+     * @param maxAttempts max executions of the same method
+     * @param baseBackoff backoff after the first server / network error, doubled at each attempt
+     * @param maxBackoff  max backoff
+     * @param timeUnit    backoff unit
+     */
+    protected void setRetryPolicy(int maxAttempts, long baseBackoff, long maxBackoff, TimeUnit timeUnit) {
+        mRetryPolicy = new RetryPolicy(maxAttempts, baseBackoff, maxBackoff, timeUnit);
+    }
+
+    /**
+     * Shares of the global rate limit, when every lane has chats ready to send
+     * A lane with nothing to send leaves its share to the others
+     *
+     * @param interactive weight of Priority.INTERACTIVE (default 6)
+     * @param normal      weight of Priority.NORMAL (default 3)
+     * @param bulk        weight of Priority.BULK (default 1)
+     */
+    protected void setPriorityWeights(int interactive, int normal, int bulk) {
+        if (interactive < 1 || normal < 1 || bulk < 1)
+            throw new IllegalArgumentException("weights must be positive");
+
+        mLanes[Priority.INTERACTIVE.ordinal()].stride = STRIDE / interactive;
+        mLanes[Priority.NORMAL.ordinal()].stride = STRIDE / normal;
+        mLanes[Priority.BULK.ordinal()].stride = STRIDE / bulk;
+    }
+
+    /**
+     * @return metrics of the sender, other components of the bot can add their own
+     */
+    public MetricsRegistry getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return methods of the given priority waiting in the queues
+     */
+    public int getQueueDepth(Priority priority) {
+        return mLanes[priority.ordinal()].depth.get();
+    }
+
+    /**
+     * @return ms waited in the queues by the methods of the given priority, until their first execution
+     */
+    public Histogram getWaitTime(Priority priority) {
+        return mLanes[priority.ordinal()].waitTime;
+    }
+
+    /**
+     * @return methods put back in their queue after a failure
+     */
+    public long getRetries() {
+        return mRetries.sum();
+    }
+
+    /**
+     * @return methods merged with another one still waiting in the same chat
+     */
+    public long getCoalesced() {
+        return mCoalesced.sum();
+    }
+
+    /**
+     * @return requests waiting for a response, 0 if the async transport isn't set
+     */
+    public int getInFlight() {
+        AsyncTransport transport = mTransport;
+        return transport == null ? 0 : transport.getInFlight();
+    }
+
+    /**
+     * Stops dispatching: the methods still queued are discarded, and their results cancelled
+     * The journal, if set, keeps them for the next start
+     * The commands of the chats are stored, if they have a ChatStateStore
+     */
+    protected void shutdownSender() {
+        mDispatcher.shutdownNow();
+        mSenders.shutdown();
+
+        for (MessageQueue queue : mMessagesMap.values())
+            queue.discard();
+
+        AsyncTransport transport = mTransport;
+        if (transport != null) {
+            try {
+                transport.close();
+            } catch (IOException e) {
+                onFailure(e);
+            }
+        }
+
+        OutboundJournal journal = mJournal;
+        if (journal != null)
+            journal.close();
+
+        SharedLimits sharedLimits = mSharedLimits;
+        if (sharedLimits != null) {
+            try {
+                sharedLimits.close();
+            } catch (IOException e) {
+                onFailure(e);
+            }
+        }
+
+        chats.close();
+    }
+
+    /**
+     * @return 0 if the token has been taken, otherwise the ms to wait
+     */
+    private long tryAcquireShared(SharedLimits sharedLimits) {
         try {
-            super.execute(method);
+            return sharedLimits.tryAcquire(System.currentTimeMillis());
+        } catch (IOException e) {
+            onFailure(e);
+            return ONE_CHAT_SEND_INTERVAL;
+        }
+    }
+
+    /**
+     * The request is done, it won't be executed again
+     */
+    private void acknowledge(Request<?> request) {
+        OutboundJournal journal = mJournal;
+        if (journal == null)
+            return;
 
-            if (!NO_WAIT_NO_TRACK.contains(method.getMethod()))
-                Chats.update(chatId, System.currentTimeMillis());
+        try {
+            for (long sequence : request.sequences)
+                journal.ack(sequence);
+        } catch (IOException e) {
+            onFailure(e);
+        }
+    }
+
+    /**
+     * @return latency of the method, in micros
+     */
+    private Histogram executeTime(BotApiMethod<?> method) {
+        return mExecuteTime.computeIfAbsent(method.getMethod(), name -> mMetrics.histogram("telegram_execute_seconds", "Latency of the methods executed", 1e-6, "method", name));
+    }
+
+    private <T extends Serializable> void syncExecute(MessageQueue queue, Request<T> request) {
+        long start = System.nanoTime();
+        try {
+            T result = execute(request.method);
+            executeTime(request.method).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+            if (!NO_WAIT_NO_TRACK.contains(request.method.getMethod()))
+                chats.update(queue.getChatId(), System.currentTimeMillis());
+
+            request.complete(result);
+            acknowledge(request);
         } catch (TelegramApiException e) {
+            executeTime(request.method).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            failed(queue, request, e);
+        }
+    }
+
+    /**
+     * Must be called by the owner of the queue
+     * The request is retried if the RetryPolicy allows it, otherwise it fails for good
+     */
+    private void failed(MessageQueue queue, Request<?> request, Exception e) {
+        if (!retry(queue, request, e)) {
+            request.fail(e);
+            acknowledge(request);
+            mFailures.increment();
             onFailure(e);
         }
     }
 
+    /**
+     * Must be called by the owner of the queue
+     *
+     * @return true if the request has been put back at the head of the queue
+     */
+    private boolean retry(MessageQueue queue, Request<?> request, Exception e) {
+        if (RetryPolicy.getRetryAfter(e) >= 0)
+            mFloodWaits.increment();
+
+        long delay = mRetryPolicy.getDelay(e, ++request.attempts);
+        if (delay == RetryPolicy.NO_RETRY)
+            return false;
+
+        long time = System.currentTimeMillis() + delay;
+        if (queue.getChatId() == NO_CHAT && RetryPolicy.getRetryAfter(e) >= 0)
+            mGlobalRetryTime.accumulateAndGet(time, Math::max);
+
+        queue.retry(request, time);
+        mRetries.increment();
+        return true;
+    }
+
+    /**
+     * The queue is released once the response is handled by a worker
+     */
+    private <T extends Serializable> void asyncExecute(AsyncTransport transport, MessageQueue queue, Request<T> request) throws InterruptedException {
+        long start = System.nanoTime();
+        CompletableFuture<T> response;
+        try {
+            response = transport.execute(getBaseUrl() + request.method.getMethod(), request.method);
+        } catch (RuntimeException e) {
+            // nothing sent (e.g. client closed): handled as a failed response
+            completed(queue, request, start, null, e);
+            return;
+        } catch (InterruptedException e) {
+            queue.release(System.currentTimeMillis());
+            throw e;
+        }
+
+        response.whenComplete((result, e) -> {
+            try {
+                mSenders.execute(() -> completed(queue, request, start, result, e));
+            } catch (RejectedExecutionException rejected) {
+                // shutting down: handled by the I/O thread
+                completed(queue, request, start, result, e);
+            }
+        });
+    }
+
+    /**
+     * Handles the response of an asynchronous execution, then releases the queue
+     */
+    private <T extends Serializable> void completed(MessageQueue queue, Request<T> request, long start, T result, Throwable e) {
+        executeTime(request.method).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        try {
+            if (e == null) {
+                if (!NO_WAIT_NO_TRACK.contains(request.method.getMethod()))
+                    chats.update(queue.getChatId(), System.currentTimeMillis());
+
+                request.complete(result);
+                acknowledge(request);
+            } else {
+                failed(queue, request, e instanceof Exception ? (Exception) e : new TelegramApiException(e.getMessage(), e));
+            }
+        } finally {
+            // the chat can be served again
+            queue.release(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Executes the request on a sender thread, which releases the queue
+     */
+    private void submit(MessageQueue queue, Request<?> request) {
+        try {
+            mSenders.execute(new MessageSenderRunnable(queue, request));
+        } catch (RejectedExecutionException e) {
+            try {
+                failed(queue, request, e);
+            } finally {
+                queue.release(System.currentTimeMillis());
+            }
+        }
+    }
+
     @Override
     public <T extends Serializable, M extends BotApiMethod<T>> void requestExecute(Long chatId, M method) {
+        requestExecute(chatId, method, Priority.NORMAL);
+    }
+
+    /**
+     * @param reply   receives the first answer requested by the handler without waiting for its result
+     * @param handler handles a webhook update
+     * @return the handler, replying inline from whichever thread runs it
+     */
+    protected Runnable replyingInline(InlineReply reply, Runnable handler) {
+        return () -> {
+            INLINE_REPLY.set(reply);
+            try {
+                handler.run();
+            } finally {
+                INLINE_REPLY.remove();
+                reply.handled();
+            }
+        };
+    }
+
+    @Override
+    public <T extends Serializable, M extends BotApiMethod<T>> void requestExecute(Long chatId, M method, Priority priority) {
+        // answers aren't limited: sent in the webhook response, if any
+        InlineReply reply = INLINE_REPLY.get();
+        if (reply != null && NO_WAIT_NO_TRACK.contains(method.getMethod()) && reply.offer(method))
+            return;
+
+        enqueue(chatId, new Request<>(method, null, priority));
+    }
+
+    @Override
+    public <T extends Serializable, M extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, M method) {
+        return requestExecuteAsync(chatId, method, Priority.NORMAL);
+    }
+
+    @Override
+    public <T extends Serializable, M extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, M method, Priority priority) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        enqueue(chatId, new Request<>(method, result, priority));
+        return result;
+    }
+
+    private void enqueue(Long chatId, Request<?> request) {
         if (chatId == null)
-            chatId = -1L;
+            chatId = NO_CHAT;
+
+        OutboundJournal journal = mJournal;
+        if (journal != null && request.sequences.length == 0) {
+            try {
+                request.sequences = new long[]{journal.append(chatId, request.priority, request.method)};
+            } catch (IOException e) {
+                // still sent, unless the process stops before
+                onFailure(e);
+            }
+        }
 
         MessageQueue queue = mMessagesMap.get(chatId);
         if (queue == null) {
             queue = new MessageQueue(chatId);
-            queue.putMessage(method);
+            queue.putMessage(request);
             mMessagesMap.put(chatId, queue);
         } else {
-            queue.putMessage(method);
+            queue.putMessage(request);
             // double check, because the queue can be removed from hashmap on state DELETE
             mMessagesMap.putIfAbsent(chatId, queue);
         }
-        mSendRequested.set(true);
     }
 
-    private final class MessageSenderRunnable implements Runnable {
-        @Override
-        public void run() {
-            try {
-                // There're messages which has to be sent
-                if (!mSendRequested.getAndSet(false))
-                    return;
+    /**
+     * Only the dispatcher calls it
+     *
+     * @return the ticket of the lane with the lowest pass, waiting for the first one if none is expired
+     */
+    private Ticket nextTicket() throws InterruptedException {
+        Ticket ticket;
+        while ((ticket = mTickets.poll()) != null)
+            mLanes[ticket.lane].add(ticket);
+
+        Lane next = null;
+        for (Lane lane : mLanes)
+            if (!lane.ready.isEmpty() && (next == null || lane.pass < next.pass))
+                next = lane;
+
+        if (next == null) {
+            ticket = mTickets.take();
+            next = mLanes[ticket.lane];
+            next.add(ticket);
+        }
 
-                long currentTime = System.currentTimeMillis();
-                mSendQueues.clear();
-                boolean processNext = false;
+        return next.ready.poll();
+    }
 
-                // 1st step
-                // Find all chats in which already allowed to send message
-                // (passed more than ONE_CHAT_SEND_INTERVAL ms from previous send)
-                Iterator<Map.Entry<Long, MessageQueue>> it = mMessagesMap.entrySet().iterator();
-                while (it.hasNext()) {
-                    MessageQueue queue = it.next().getValue();
+    private final class MessageDispatcherRunnable implements Runnable {
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    // Wait for the first chat which is allowed to send, or to be deleted, on the lane to serve
+                    Ticket ticket = nextTicket();
+                    MessageQueue queue = ticket.queue;
 
-                    // Check
-                    switch (queue.getCurrentState(currentTime)) {
+                    switch (queue.getCurrentState(ticket, System.currentTimeMillis())) {
                         case MessageQueue.SEND:
-                            mSendQueues.add(queue);
-                            processNext = true;
-                            break;
-
-                        case MessageQueue.WAIT:
-                            processNext = true;
+                            long pause;
+                            while ((pause = mGlobalRetryTime.get() - System.currentTimeMillis()) > 0)
+                                TimeUnit.MILLISECONDS.sleep(pause);
+
+                            long wait;
+                            while ((wait = mTokenBucket.tryAcquire(System.nanoTime())) > 0)
+                                TimeUnit.NANOSECONDS.sleep(wait);
+
+                            SharedLimits sharedLimits = mSharedLimits;
+                            if (sharedLimits != null)
+                                while ((wait = tryAcquireShared(sharedLimits)) > 0)
+                                    TimeUnit.MILLISECONDS.sleep(wait);
+
+                            Request<?> request = queue.getRequest(System.currentTimeMillis());
+
+                            // the lane served pays for the send
+                            Lane lane = mLanes[request.priority.ordinal()];
+                            mVirtualTime = lane.pass;
+                            lane.pass += lane.stride;
+                            AsyncTransport transport = mTransport;
+                            if (transport == null)
+                                submit(queue, request);
+                            else
+                                asyncExecute(transport, queue, request);
                             break;
 
                         case MessageQueue.DELETE:
-                            it.remove();
+                            mMessagesMap.remove(queue.getChatId(), queue);
                             break;
                     }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    onFailure(e);
                 }
+            }
+        }
+    }
 
-                // If any of chats are in state of WAIT or SEND
-                // Request another iteration
-                if (processNext) mSendRequested.set(true);
-
-                // 2nd step
-                // Find oldest waiting queue and poll its message
-                MessageQueue sendQueue = null;
-                long oldestPutTime = Long.MAX_VALUE;
-                for (MessageQueue queue : mSendQueues) {
-                    long putTime = queue.getPutTime();
-                    if (putTime < oldestPutTime) {
-                        oldestPutTime = putTime;
-                        sendQueue = queue;
-                    }
-                }
+    private final class MessageSenderRunnable implements Runnable {
+        private final MessageQueue queue;
+        private final Request<?> request;
 
-                // Possible if on first step wasn't found any chats in state SEND
-                if (sendQueue == null) return;
+        private MessageSenderRunnable(MessageQueue queue, Request<?> request) {
+            this.queue = queue;
+            this.request = request;
+        }
 
-                // Invoke the send callback
-                // ChatId is passed to check how many messages per minute has sent
-                syncExecute(sendQueue.getChatId(), sendQueue.getMethod(currentTime));
+        @Override
+        public void run() {
+            try {
+                syncExecute(queue, request);
             } catch (Exception e) {
+                request.fail(e);
+                acknowledge(request);
+                mFailures.increment();
                 onFailure(e);
+            } finally {
+                // the chat can be served again
+                queue.release(System.currentTimeMillis());
             }
         }
     }
 
+    /**
+     * Chats ready to send whose most urgent method has the same Priority
+     * Only the dispatcher uses it, except for the metrics
+     */
+    private final class Lane {
+        private final ArrayDeque<Ticket> ready = new ArrayDeque<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final Histogram waitTime;
+        private volatile long stride;           // pass gained at each send, inversely proportional to the weight
+        private long pass;                      // the lane with the lowest pass is served first
+
+        private Lane(Priority priority) {
+            String label = priority.name().toLowerCase();
+            this.waitTime = mMetrics.histogram("telegram_queue_wait_seconds", "Time waited in the queues until the first execution", 1e-3, "priority", label);
+            mMetrics.gauge("telegram_queue_depth", "Methods waiting in the queues", depth::get, "priority", label);
+        }
+
+        private void add(Ticket ticket) {
+            // a lane idle until now doesn't get the credit of the time it didn't spend
+            if (ready.isEmpty())
+                pass = Math.max(pass, mVirtualTime);
+
+            ready.add(ticket);
+        }
+    }
+
+    /**
+     * A method waiting to be executed, and who waits for its result
+     */
+    private static final class Request<T extends Serializable> {
+        private static final long[] NO_SEQUENCES = new long[0];
+
+        private BotApiMethod<T> method;             // replaced when merged with a newer one
+        private CompletableFuture<T> result;        // null if nobody waits for it
+        private final Priority priority;
+        private final long enqueueTime;
+        private int attempts;                       // executions failed so far
+        private long[] sequences = NO_SEQUENCES;    // in the journal, one per method merged in this request
+
+        private Request(BotApiMethod<T> method, CompletableFuture<T> result, Priority priority) {
+            if (priority == null)
+                throw new IllegalArgumentException("priority cannot be null");
+
+            this.method = method;
+            this.result = result;
+            this.priority = priority;
+            this.enqueueTime = System.currentTimeMillis();
+        }
+
+        private void complete(T value) {
+            if (result != null)
+                result.complete(value);
+        }
+
+        private void fail(Exception e) {
+            if (result != null)
+                result.completeExceptionally(e);
+        }
+
+        private void cancel() {
+            if (result != null)
+                result.cancel(false);
+        }
+
+        /**
+         * Merges the newer request into this one, which completes the result of both
+         *
+         * @return false if both have to be executed
+         */
+        @SuppressWarnings("unchecked")
+        private boolean absorb(Request<?> next) {
+            BotApiMethod<?> merged = Coalescing.merge(method, next.method);
+            if (merged == null)
+                return false;
+
+            // merged methods return the same type
+            method = (BotApiMethod<T>) merged;
+
+            if (next.sequences.length > 0) {
+                long[] both = Arrays.copyOf(sequences, sequences.length + next.sequences.length);
+                System.arraycopy(next.sequences, 0, both, sequences.length, next.sequences.length);
+                sequences = both;
+            }
+
+            CompletableFuture<T> other = (CompletableFuture<T>) next.result;
+            if (other != null) {
+                if (result == null)
+                    result = other;
+                else
+                    result.whenComplete((value, e) -> {
+                        if (e == null)
+                            other.complete(value);
+                        else
+                            other.completeExceptionally(e);
+                    });
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * When a MessageQueue has to be checked again
+     * Only the last Ticket of a MessageQueue is valid, the previous ones are ignored once expired
+     */
+    private static final class Ticket implements Delayed {
+        private final MessageQueue queue;
+        private final long time;
+        private final int lane;                 // Priority.ordinal() of the most urgent method of the queue
+
+        private Ticket(MessageQueue queue, long time, int lane) {
+            this.queue = queue;
+            this.time = time;
+            this.lane = lane;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(time, ((Ticket) o).time);
+        }
+    }
+
     private class MessageQueue {
         private static final int EMPTY = 0;     // Queue is empty
         private static final int WAIT = 1;      // Queue has message(s) but not yet allowed to send
         private static final int DELETE = 2;    // None message of given queue was sent longer than CHAT_INACTIVE_INTERVAL, delete for optimisation
         private static final int SEND = 3;      // Queue has message(s) and ready to send
+        private static final int STALE = 4;     // Ticket replaced by a newer one, or a worker owns this queue
         private final long chatId;
-        private final ConcurrentLinkedQueue<BotApiMethod<? extends Serializable>> mQueue = new ConcurrentLinkedQueue<>();
+        private final ArrayDeque<?>[] mQueues = new ArrayDeque<?>[PRIORITIES.length];  // One per Priority, created on first use
         private long mLastSendTime;             // Time of last poll from queue
-        private volatile long mLastPutTime;     // Time of last put into queue
+        private long mRetryTime;                // Time before which the queue isn't served, after a failure
+        private boolean mOwned;                 // A worker owns this queue
+        private boolean mLeased;                // This node holds the CHAT_LEASE of the chat
+        private Ticket mTicket;                 // Next check of this queue
 
         private MessageQueue(long chatId) {
             this.chatId = chatId;
         }
 
-        synchronized <T extends Serializable, M extends BotApiMethod<T>> void putMessage(M method) {
-            mQueue.add(method);
-            mLastPutTime = System.currentTimeMillis();
+        @SuppressWarnings("unchecked")
+        private ArrayDeque<Request<?>> queue(int lane) {
+            if (mQueues[lane] == null)
+                mQueues[lane] = new ArrayDeque<Request<?>>(4);
+
+            return (ArrayDeque<Request<?>>) mQueues[lane];
         }
 
-        synchronized int getCurrentState(long currentTime) {
+        /**
+         * @return index of the most urgent non empty queue, -1 if all are empty
+         */
+        private int headLane() {
+            for (int i = 0; i < mQueues.length; i++)
+                if (mQueues[i] != null && !mQueues[i].isEmpty())
+                    return i;
+
+            return -1;
+        }
+
+        synchronized void putMessage(Request<?> request) {
+            ArrayDeque<Request<?>> queue = queue(request.priority.ordinal());
+            if (coalesce(queue, request)) {
+                mCoalesced.increment();
+                return;
+            }
+
+            queue.add(request);
+            mLanes[request.priority.ordinal()].depth.incrementAndGet();
+
+            if (!mOwned)
+                schedule(getReadyTime(System.currentTimeMillis()));
+        }
+
+        /**
+         * @return true if the request has been merged with the last one waiting, answers aside
+         */
+        private boolean coalesce(ArrayDeque<Request<?>> queue, Request<?> request) {
+            boolean answer = NO_WAIT_NO_TRACK.contains(request.method.getMethod());
+
+            Iterator<Request<?>> it = queue.descendingIterator();
+            while (it.hasNext()) {
+                Request<?> queued = it.next();
+                if (!answer && NO_WAIT_NO_TRACK.contains(queued.method.getMethod()))
+                    continue;
+
+                return queued.absorb(request);
+            }
+
+            return false;
+        }
+
+        /**
+         * @return when the first message could be sent, or when the queue could be deleted if empty
+         */
+        private long getReadyTime(long currentTime) {
+            int lane = headLane();
+            if (lane < 0)
+                return mLastSendTime + CHAT_INACTIVE_INTERVAL;
+
+            if (NO_WAIT_NO_TRACK.contains(queue(lane).peek().method.getMethod()))
+                return Math.max(currentTime, mRetryTime);
+
+            return Math.max(Math.max(currentTime, mRetryTime), mLastSendTime + ONE_CHAT_SEND_INTERVAL);
+        }
+
+        private void schedule(long time) {
+            int lane = Math.max(headLane(), 0);
+
+            // already checked earlier, on a lane as urgent
+            if (mTicket != null && mTicket.time <= time && mTicket.lane <= lane)
+                return;
+
+            mTicket = new Ticket(this, time, lane);
+            mTickets.add(mTicket);
+        }
+
+        synchronized int getCurrentState(Ticket ticket, long currentTime) {
+            if (ticket != mTicket)
+                return STALE;
+
+            mTicket = null;
+
             // currentTime is passed as parameter for optimisation
             long interval = currentTime - mLastSendTime;
-            boolean empty = mQueue.isEmpty();
 
-            if (!empty && (NO_WAIT_NO_TRACK.contains(mQueue.peek().getMethod()) || (interval > ONE_CHAT_SEND_INTERVAL && Chats.getSent(chatId, currentTime) < maxMessagesPerMinute)))
+            int lane = headLane();
+            if (lane < 0) {
+                if (interval > CHAT_INACTIVE_INTERVAL)
+                    return DELETE;
+
+                schedule(getReadyTime(currentTime));
+                return EMPTY;
+            }
+
+            if (currentTime < mRetryTime) {
+                schedule(mRetryTime);
+                return WAIT;
+            }
+
+            if (NO_WAIT_NO_TRACK.contains(queue(lane).peek().method.getMethod()))
                 return SEND;
 
-            if (interval > CHAT_INACTIVE_INTERVAL)
-                return DELETE;
+            if (interval > ONE_CHAT_SEND_INTERVAL && chats.getSent(chatId, currentTime) < maxMessagesPerMinute) {
+                if (isLeased(currentTime))
+                    return SEND;
 
-            if (empty)
-                return EMPTY;
+                // another node sends to this chat
+                schedule(currentTime + ONE_CHAT_SEND_INTERVAL);
+                return WAIT;
+            }
 
+            // too many messages in the last minutes: check again after ONE_CHAT_SEND_INTERVAL ms
+            schedule(interval > ONE_CHAT_SEND_INTERVAL ? currentTime + ONE_CHAT_SEND_INTERVAL : getReadyTime(currentTime));
             return WAIT;
         }
 
-        synchronized BotApiMethod<? extends Serializable> getMethod(long currentTime) {
+        /**
+         * @return true if this node can send to the chat, renewing its lease
+         */
+        private boolean isLeased(long currentTime) {
+            SharedLimits sharedLimits = mSharedLimits;
+            if (sharedLimits == null)
+                return true;
+
+            mLeased = lease(currentTime, CHAT_LEASE);
+            return mLeased;
+        }
+
+        /**
+         * @return false if another node owns the chat, or the SharedLimits failed
+         */
+        private boolean lease(long currentTime, long ttl) {
+            SharedLimits sharedLimits = mSharedLimits;
+            if (sharedLimits == null)
+                return true;
+
+            try {
+                return sharedLimits.tryLease(chatId, currentTime, ttl);
+            } catch (IOException e) {
+                onFailure(e);
+                return false;
+            }
+        }
+
+        /**
+         * The caller owns this queue until release() is called
+         */
+        synchronized Request<?> getRequest(long currentTime) {
+            mOwned = true;
+            mTicket = null;
             mLastSendTime = currentTime;
-            return mQueue.poll();
+
+            Request<?> request = queue(headLane()).poll();
+            Lane lane = mLanes[request.priority.ordinal()];
+            lane.depth.decrementAndGet();
+            if (request.attempts == 0)
+                lane.waitTime.record(currentTime - request.enqueueTime);
+
+            return request;
         }
 
-        long getPutTime() {
-            return mLastPutTime;
+        synchronized void release(long currentTime) {
+            mOwned = false;
+
+            // nothing else to send: another node can take the chat once ONE_CHAT_SEND_INTERVAL is past
+            if (mLeased && headLane() < 0) {
+                mLeased = false;
+                lease(mLastSendTime, ONE_CHAT_SEND_INTERVAL);
+            }
+
+            schedule(getReadyTime(currentTime));
+        }
+
+        /**
+         * Puts back the request of the owner at the head of the queue
+         *
+         * @param time not served before
+         */
+        synchronized void retry(Request<?> request, long time) {
+            queue(request.priority.ordinal()).addFirst(request);
+            mLanes[request.priority.ordinal()].depth.incrementAndGet();
+            mRetryTime = Math.max(mRetryTime, time);
+        }
+
+        synchronized void discard() {
+            for (int i = 0; i < mQueues.length; i++) {
+                if (mQueues[i] == null)
+                    continue;
+
+                Request<?> request;
+                while ((request = queue(i).poll()) != null) {
+                    mLanes[i].depth.decrementAndGet();
+                    request.cancel();
+                }
+            }
         }
 
         long getChatId() {
             return chatId;
         }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package gekoramy.telegram.bot.timed;
 import org.telegram.telegrambots.api.methods.BotApiMethod;
 
 import java.io.Serializable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Created by Luca Mosetti on 2017
@@ -22,6 +23,8 @@ public interface TimedSender {
      * chatId should be null only if there isn't a queue to respect / it's not possible to extract the chatId
      * This happens with InlineMessages
      *
+     * The method has Priority.NORMAL
+     *
      * @param chatId   the chatId of the receiver (even if the method doesn't have this field)
      * @param method   method to execute
      * @param <T>      extends Serializable
@@ -29,4 +32,44 @@ public interface TimedSender {
      */
     <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method);
 
+    /**
+     * Same as requestExecute(...), in the lane of the given priority
+     *
+     * @param chatId   the chatId of the receiver (even if the method doesn't have this field)
+     * @param method   method to execute
+     * @param priority lane of the method
+     * @param <T>      extends Serializable
+     * @param <Method> extends BotApiMethod
+     */
+    <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method, Priority priority);
+
+    /**
+     * Same as requestExecute(...), but the result is kept
+     * The future is completed by a sender worker: dependent stages shouldn't block it
+     *
+     * @param chatId   the chatId of the receiver (even if the method doesn't have this field)
+     * @param method   method to execute
+     * @param <T>      extends Serializable
+     * @param <Method> extends BotApiMethod
+     * @return completed with the result, exceptionally with the TelegramApiException, cancelled if discarded
+     */
+    <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method);
+
+    /**
+     * Same as requestExecuteAsync(...), in the lane of the given priority
+     *
+     * @param chatId   the chatId of the receiver (even if the method doesn't have this field)
+     * @param method   method to execute
+     * @param priority lane of the method
+     * @param <T>      extends Serializable
+     * @param <Method> extends BotApiMethod
+     * @return completed with the result, exceptionally with the TelegramApiException, cancelled if discarded
+     */
+    <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method, Priority priority);
+
+    /**
+     * @return the state of the chats served by this sender
+     */
+    Chats getChats();
+
 }
@@ -27,11 +27,20 @@ import java.nio.charset.StandardCharsets;
 public abstract class TimedTelegramLongPollingBot extends TimedDefaultAbsSender implements LongPollingBot {
 
     public TimedTelegramLongPollingBot(long maxMessagesPerMinute) {
-        this(ApiContext.getInstance(DefaultBotOptions.class), maxMessagesPerMinute);
+        this(maxMessagesPerMinute, DEFAULT_SENDER_THREADS, new Chats());
     }
 
-    private TimedTelegramLongPollingBot(DefaultBotOptions options, long maxMessagesPerMinute) {
-        super(options, maxMessagesPerMinute);
+    public TimedTelegramLongPollingBot(long maxMessagesPerMinute, int senderThreads, Chats chats) {
+        this(ApiContext.getInstance(DefaultBotOptions.class), maxMessagesPerMinute, senderThreads, chats);
+    }
+
+    private TimedTelegramLongPollingBot(DefaultBotOptions options, long maxMessagesPerMinute, int senderThreads, Chats chats) {
+        super(options, maxMessagesPerMinute, senderThreads, chats);
+    }
+
+    @Override
+    public void onClosing() {
+        shutdownSender();
     }
 
     @Override
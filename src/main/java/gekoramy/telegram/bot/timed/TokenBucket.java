@@ -0,0 +1,60 @@
+package gekoramy.telegram.bot.timed;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Global rate limiter shared by all the sender workers
+ * It holds at most 'capacity' tokens and gains one every 'nanosPerToken' ns
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+final class TokenBucket {
+
+    private final long capacity;
+    private final long nanosPerToken;
+
+    private long tokens;
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond tokens gained every second
+     * @param capacity         max tokens which can be accumulated (burst)
+     */
+    TokenBucket(long permitsPerSecond, long capacity) {
+        if (permitsPerSecond < 1 || permitsPerSecond > TimeUnit.SECONDS.toNanos(1))
+            throw new IllegalArgumentException("permitsPerSecond must be between 1 and " + TimeUnit.SECONDS.toNanos(1));
+
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        this.capacity = capacity;
+        this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return 0 if the token has been acquired, otherwise the ns to wait for the next one
+     */
+    synchronized long tryAcquire(long now) {
+        refill(now);
+
+        if (tokens > 0) {
+            tokens--;
+            return 0;
+        }
+
+        return nanosPerToken - (now - lastRefill);
+    }
+
+    private void refill(long now) {
+        long gained = (now - lastRefill) / nanosPerToken;
+        if (gained <= 0)
+            return;
+
+        tokens = Math.min(capacity, tokens + gained);
+        lastRefill = tokens == capacity ? now : lastRefill + gained * nanosPerToken;
+    }
+}
@@ -0,0 +1,86 @@
+package gekoramy.telegram.bot;
+
+import gekoramy.telegram.bot.exception.TwoCommandException;
+import gekoramy.telegram.bot.metrics.MetricsRegistry;
+import gekoramy.telegram.bot.model.Command;
+import gekoramy.telegram.bot.model.UseCaseCommand;
+import gekoramy.telegram.bot.util.UselessMonitor;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class CommandTrieTest {
+
+    private static final UseCaseCommand START = new UseCaseCommand(new Command("start", ""));
+    private static final UseCaseCommand STARTOVER = new UseCaseCommand(new Command("startOver", ""));
+
+    private static CommandTrie trie() {
+        Map<String, UseCaseCommand> commands = new HashMap<>();
+        commands.put("start", START);
+        commands.put("startOver", STARTOVER);
+        return new CommandTrie(commands);
+    }
+
+    @Test
+    public void matchesTheWholeCommandOnly() {
+        CommandTrie trie = trie();
+        assertSame(START, trie.find("/start", 1, "bot"));
+        assertSame(STARTOVER, trie.find("/startover", 1, "bot"));
+        assertNull(trie.find("/star", 1, "bot"));
+        assertNull(trie.find("/started", 1, "bot"));
+        assertNull(trie.find("/", 1, "bot"));
+    }
+
+    @Test
+    public void readsTheArguments() {
+        CommandTrie trie = trie();
+        assertSame(START, trie.find("/start now please", 1, "bot"));
+        assertEquals("now please", CommandTrie.arguments("/start now please", 1));
+        assertNull(CommandTrie.arguments("/start", 1));
+        assertSame(START, trie.find("start now", 0, "bot"));
+        assertEquals("now", CommandTrie.arguments("start now", 0));
+    }
+
+    @Test
+    public void ignoresTheCommandsAddressedToOtherBots() {
+        CommandTrie trie = trie();
+        assertSame(START, trie.find("/start@bot", 1, "bot"));
+        assertSame(START, trie.find("/start@BOT now", 1, "bot"));
+        assertNull(trie.find("/start@otherbot", 1, "bot"));
+        assertNull(trie.find("/start@otherbot now", 1, "bot"));
+        assertNull(trie.find("/start@bo", 1, "bot"));
+        assertNull(trie.find("/start@", 1, "bot"));
+    }
+
+    @Test
+    public void ignoresTheCase() {
+        CommandTrie trie = trie();
+        assertSame(START, trie.find("/START", 1, "bot"));
+        assertSame(STARTOVER, trie.find("/StartOver", 1, "bot"));
+        assertSame(STARTOVER, trie.find("/STARTOVER@Bot", 1, "bot"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void commandsDifferingOnlyByCaseAreRejected() {
+        Map<String, UseCaseCommand> commands = new HashMap<>();
+        commands.put("start", START);
+        commands.put("Start", new UseCaseCommand(new Command("Start", "")));
+        new CommandTrie(commands);
+    }
+
+    @Test(expected = TwoCommandException.class)
+    public void theRegistryRejectsCommandsDifferingOnlyByCase() throws TwoCommandException {
+        CommandRegistry registry = new CommandRegistry("bot", new UselessMonitor(), new MetricsRegistry());
+        registry.register(new UseCaseCommand(new Command("start", "")));
+        registry.register(new UseCaseCommand(new Command("Start", "")));
+    }
+}
@@ -0,0 +1,173 @@
+package gekoramy.telegram.bot;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The pipeline is never started: the test plays the fetcher and the drainer, a local server plays Telegram
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class UpdatePipelineTest {
+
+    private final List<Exception> failures = new ArrayList<>();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private UpdatePipeline pipeline;
+
+    /**
+     * Plays Telegram, answering every getUpdates without updates
+     */
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.add(exchange.getRequestURI().getPath() + "?" + exchange.getRequestURI().getQuery());
+            byte[] body = response();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void shutdown() {
+        if (pipeline != null)
+            pipeline.shutdown();
+
+        server.stop(0);
+        assertTrue(failures.isEmpty());
+    }
+
+    private UpdatePipeline pipeline(int capacity) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/bot123";
+        pipeline = new UpdatePipeline(null, url, null, capacity, 1, failures::add);
+        return pipeline;
+    }
+
+    private static byte[] response(long... updateIds) {
+        StringBuilder json = new StringBuilder("{\"ok\":true,\"result\":[");
+        for (int i = 0; i < updateIds.length; i++) {
+            if (i > 0)
+                json.append(',');
+            json.append("{\"update_id\":").append(updateIds[i]).append(",\"message\":{\"message_id\":1,\"text\":\"/start\"}}");
+        }
+        return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void decodesInOrder() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        assertEquals(2, pipeline.publish(response(10, 11)));
+
+        assertEquals(10, (int) pipeline.get(pipeline.take()).getUpdateId());
+        assertEquals(11, (int) pipeline.get(pipeline.take()).getUpdateId());
+    }
+
+    @Test
+    public void commitsOnlyWithoutHoles() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        pipeline.publish(response(10, 11, 12));
+        long first = pipeline.take();
+        long second = pipeline.take();
+        long third = pipeline.take();
+
+        pipeline.handled(third);
+        assertEquals(0, pipeline.getCommitted());
+        assertEquals(3, pipeline.getQueueDepth());
+
+        pipeline.handled(first);
+        assertEquals(10, pipeline.getCommitted());
+        assertEquals(2, pipeline.getQueueDepth());
+
+        pipeline.handled(second);
+        assertEquals(12, pipeline.getCommitted());
+        assertEquals(0, pipeline.getQueueDepth());
+    }
+
+    @Test
+    public void skipsTheUpdatesAlreadyInTheRing() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        assertEquals(2, pipeline.publish(response(10, 11)));
+
+        // asked again from the first not handled
+        assertEquals(1, pipeline.publish(response(10, 11, 12)));
+        assertEquals(2, pipeline.getDuplicates());
+        assertEquals(3, pipeline.getQueueDepth());
+        assertEquals(5, pipeline.getReceived());
+    }
+
+    @Test
+    public void leavesToTheNextFetchTheUpdatesNotFitting() throws Exception {
+        UpdatePipeline pipeline = pipeline(2);
+        assertEquals(2, pipeline.publish(response(1, 2, 3)));
+        assertEquals(0, pipeline.getDuplicates());
+
+        pipeline.handled(pipeline.take());
+        assertEquals(1, pipeline.getCommitted());
+
+        // 3 isn't a duplicate: it was never published
+        assertEquals(1, pipeline.publish(response(2, 3)));
+        assertEquals(1, pipeline.getDuplicates());
+        assertEquals(2, pipeline.getQueueDepth());
+    }
+
+    @Test
+    public void skipsTheMalformedUpdates() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        pipeline.publish("{\"ok\":true,\"result\":[{\"update_id\":10,\"message\":[]}]}".getBytes(StandardCharsets.UTF_8));
+
+        long position = pipeline.take();
+        assertNull(pipeline.get(position));
+        assertEquals(1, pipeline.getMalformed());
+        failures.clear();
+
+        pipeline.handled(position);
+        assertEquals(10, pipeline.getCommitted());
+    }
+
+    @Test
+    public void confirmsTheUpdatesHandledOnShutdown() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        pipeline.publish(response(10, 11, 12));
+        pipeline.handled(pipeline.take());
+        pipeline.handled(pipeline.take());
+        pipeline.take();
+
+        pipeline.shutdown();
+        this.pipeline = null;
+
+        // 12 isn't handled: received again
+        assertEquals(Collections.singletonList("/bot123/getUpdates?offset=12&limit=1&timeout=0"), requests);
+    }
+
+    @Test
+    public void confirmsNothingIfNothingHandled() throws Exception {
+        UpdatePipeline pipeline = pipeline(8);
+        pipeline.publish(response(10));
+        pipeline.take();
+
+        pipeline.shutdown();
+        this.pipeline = null;
+
+        assertTrue(requests.isEmpty());
+    }
+}
@@ -0,0 +1,135 @@
+package gekoramy.telegram.bot.model.query;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class PackedQueryCodecTest {
+
+    private static final class Builder extends PackedQueryBuilder {
+        private Builder(QuerySchema schema) {
+            super(schema);
+        }
+    }
+
+    @Test
+    public void roundTrip() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        QuerySchema schema = new QuerySchema("page", "offset", "name");
+        codec.register("/list", schema);
+
+        String data = new Builder(schema)
+                .put("page", 3)
+                .put("offset", -150_000_000_000L)
+                .put("name", "città ✓")
+                .build();
+
+        assertTrue(data.startsWith(Regex.PACKED));
+        assertTrue(data.length() <= 64);
+
+        Map<String, String> map = codec.decode(data).getMap();
+        assertEquals("/list", map.get(Regex.COMMAND));
+        assertEquals("3", map.get("page"));
+        assertEquals("-150000000000", map.get("offset"));
+        assertEquals("città ✓", map.get("name"));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void keysAppendedLaterAreSkipped() {
+        PackedQueryCodec newer = new PackedQueryCodec();
+        QuerySchema newerSchema = new QuerySchema(7, "page", "added");
+        newer.register("/list", newerSchema);
+
+        PackedQueryCodec older = new PackedQueryCodec();
+        older.register("/list", new QuerySchema(7, "page"));
+
+        String data = new Builder(newerSchema).put("page", 1).put("added", "x").build();
+        Map<String, String> map = older.decode(data).getMap();
+        assertEquals("1", map.get("page"));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void malformedDataDecodesEmpty() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        codec.register("/list", new QuerySchema("page"));
+
+        assertTrue(codec.decode(Regex.PACKED + "!!").getMap().isEmpty());
+        assertTrue(codec.decode(Regex.PACKED + "_____w").getMap().isEmpty());
+        assertNull(codec.decode(Regex.PACKED).getCommandIdentifier());
+    }
+
+    @Test
+    public void derivedIdsDontDependOnTheOrder() {
+        List<String> commands = new ArrayList<>();
+        for (int i = 0; i < 20; i++)
+            commands.add("/command" + i);
+
+        Map<String, Integer> ids = new HashMap<>();
+        PackedQueryCodec codec = new PackedQueryCodec();
+        for (String command : commands) {
+            QuerySchema schema = new QuerySchema("k");
+            codec.register(command, schema);
+            assertTrue(schema.getCommandId() >= QuerySchema.MAX_DECLARED_ID);
+            ids.put(command, schema.getCommandId());
+        }
+
+        // registered in another order, with a command more
+        Collections.reverse(commands);
+        commands.add(7, "/added");
+        PackedQueryCodec reordered = new PackedQueryCodec();
+        for (String command : commands) {
+            QuerySchema schema = new QuerySchema("k");
+            reordered.register(command, schema);
+            if (ids.containsKey(command))
+                assertEquals((int) ids.get(command), schema.getCommandId());
+        }
+    }
+
+    @Test
+    public void derivedIdsClashingAreRejected() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        codec.register("Aa", new QuerySchema("k"));
+
+        // "Aa" and "BB" have the same hashCode
+        try {
+            codec.register("BB", new QuerySchema("k"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("declare an id"));
+        }
+
+        QuerySchema bb = new QuerySchema(3, "k");
+        codec.register("BB", bb);
+        assertEquals("BB", codec.decode(new Builder(bb).build()).getCommandIdentifier());
+    }
+
+    @Test
+    public void declaredIdIsKept() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        QuerySchema schema = new QuerySchema(42, "k");
+        codec.register("/start", schema);
+        assertEquals(42, schema.getCommandId());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sameDeclaredIdIsRejected() {
+        PackedQueryCodec codec = new PackedQueryCodec();
+        codec.register("/a", new QuerySchema(1, "k"));
+        codec.register("/b", new QuerySchema(1, "k"));
+    }
+}
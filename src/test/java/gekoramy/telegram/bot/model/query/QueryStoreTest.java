@@ -0,0 +1,113 @@
+package gekoramy.telegram.bot.model.query;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class QueryStoreTest {
+
+    private static final long TTL = 1000;
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+
+    private QueryStore store(long maxBytes) {
+        return new QueryStore(maxBytes, TTL, TimeUnit.MILLISECONDS, null, now::get);
+    }
+
+    @Test
+    public void getsWhatWasPut() {
+        QueryStore store = store(1 << 20);
+        String token = store.put("cmd:/list\npage:3");
+
+        assertTrue(token.startsWith(Regex.STORED));
+        assertEquals("cmd:/list\npage:3", store.get(token));
+        assertEquals(0, store.getMisses());
+    }
+
+    @Test
+    public void invalidTokensMiss() {
+        QueryStore store = store(1 << 20);
+
+        assertNull(store.get(Regex.STORED + "!!"));
+        assertNull(store.get(Regex.STORED + "AA"));
+        assertNull(store.get(Regex.STORED + "AAAAAAAAAAA"));
+    }
+
+    @Test
+    public void expiresAfterTtl() {
+        QueryStore store = store(1 << 20);
+        String token = store.put("data");
+
+        now.addAndGet(TTL);
+        assertEquals("data", store.get(token));
+
+        now.addAndGet(1);
+        assertNull(store.get(token));
+        assertEquals(1, store.getExpirations());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void expiresEvenIfReadContinuously() {
+        QueryStore store = store(1 << 20);
+        String read = store.put("read");
+        String other = store.put("other");
+
+        // every get moves 'read' to the tail of the access order
+        for (int i = 0; i < 10; i++) {
+            now.addAndGet(TTL / 10);
+            assertEquals("read", store.get(read));
+        }
+
+        now.addAndGet(1);
+        assertNull(store.get(read));
+        assertNull(store.get(other));
+        assertEquals(2, store.getExpirations());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() {
+        String data = "0123456789";
+
+        // every shard holds 2 callback_data of this length
+        QueryStore store = store(16 * 2 * (64 + 2 * data.length()));
+        String used = store.put(data);
+        String unused = store.put(data);
+
+        for (int i = 0; i < 500; i++) {
+            store.put(data);
+            assertNotNull(store.get(used));
+        }
+
+        assertNull(store.get(unused));
+        assertTrue(store.size() <= 32);
+        assertEquals(502 - store.size(), store.getEvictions());
+        assertEquals(0, store.getExpirations());
+    }
+
+    @Test
+    public void evictedAreNotCountedAsExpired() {
+        String data = "0123456789";
+        QueryStore store = store(16 * (64 + 2 * data.length()));
+
+        for (int i = 0; i < 100; i++)
+            store.put(data);
+
+        now.addAndGet(TTL + 1);
+        store.put(data);
+        for (int i = 0; i < 100; i++)
+            store.put(data);
+
+        assertEquals(201, store.getEvictions() + store.getExpirations() + store.size());
+    }
+}
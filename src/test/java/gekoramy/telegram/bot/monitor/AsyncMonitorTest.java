@@ -0,0 +1,111 @@
+package gekoramy.telegram.bot.monitor;
+
+import gekoramy.telegram.bot.util.UselessMonitor;
+import org.junit.Test;
+import org.telegram.telegrambots.api.objects.Message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class AsyncMonitorTest {
+
+    /**
+     * Keeps the timeStamps received, called by the background thread only
+     */
+    private static class Recorder extends UselessMonitor {
+        final List<Long> timeStamps = new ArrayList<>();
+
+        @Override
+        public void received(long timeStamp, String cmd, boolean not_handled, Message msg) {
+            timeStamps.add(timeStamp);
+        }
+    }
+
+    @Test
+    public void deliversInOrder() throws IOException {
+        Recorder recorder = new Recorder();
+        AsyncMonitor monitor = new AsyncMonitor(recorder, 8, AsyncMonitor.Overflow.BLOCK);
+
+        for (long i = 0; i < 10_000; i++)
+            monitor.received(i, "/start", false, (Message) null);
+        monitor.close();
+
+        assertEquals(10_000, recorder.timeStamps.size());
+        for (int i = 0; i < 10_000; i++)
+            assertEquals(i, (long) recorder.timeStamps.get(i));
+
+        assertEquals(10_000, monitor.getDelivered());
+        assertEquals(0, monitor.getDropped());
+        assertEquals(0, monitor.getQueueDepth());
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Recorder recorder = new Recorder() {
+            @Override
+            public void received(long timeStamp, String cmd, boolean not_handled, Message msg) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.received(timeStamp, cmd, not_handled, msg);
+            }
+        };
+        AsyncMonitor monitor = new AsyncMonitor(recorder, 4, AsyncMonitor.Overflow.DROP);
+
+        for (long i = 0; i < 100; i++)
+            monitor.received(i, "/start", false, (Message) null);
+
+        release.countDown();
+        monitor.close();
+
+        assertTrue(monitor.getDropped() > 0);
+        assertEquals(100, monitor.getDelivered() + monitor.getDropped());
+        assertEquals(monitor.getDelivered(), recorder.timeStamps.size());
+    }
+
+    @Test
+    public void everyEventIsDeliveredOrDroppedWhenClosing() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            Recorder recorder = new Recorder();
+            AsyncMonitor monitor = new AsyncMonitor(recorder, 64, AsyncMonitor.Overflow.BLOCK);
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder published = new LongAdder();
+
+            Thread[] producers = new Thread[4];
+            for (int p = 0; p < producers.length; p++) {
+                producers[p] = new Thread(() -> {
+                    // keeps publishing across the close
+                    for (int i = 0; running.get() || i < 1000; i++) {
+                        monitor.received(i, "/start", false, (Message) null);
+                        published.increment();
+                    }
+                });
+                producers[p].start();
+            }
+
+            Thread.sleep(5);
+            monitor.close();
+            running.set(false);
+            for (Thread producer : producers)
+                producer.join();
+
+            assertEquals(published.sum(), monitor.getDelivered() + monitor.getDropped());
+            assertEquals(monitor.getDelivered(), recorder.timeStamps.size());
+            assertEquals(0, monitor.getQueueDepth());
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package gekoramy.telegram.bot.monitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class BinaryLogMonitorTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+    private static final int RECORDS = (SEGMENT_BYTES - BinaryLogMonitor.HEADER) / BinaryLogMonitor.RECORD;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dropsTheEventsWhichCantBeWritten() throws IOException {
+        List<Long> read = new ArrayList<>();
+        try (BinaryLogMonitor monitor = new BinaryLogMonitor(folder.getRoot(), SEGMENT_BYTES, 0)) {
+            // the next segment can't be created
+            File next = new File(folder.getRoot(), BinaryLogMonitor.PREFIX + 2 + BinaryLogMonitor.SUFFIX);
+            assertTrue(next.mkdir());
+
+            for (int i = 0; i < RECORDS + 1; i++)
+                monitor.received(i, "/start", false, new InlineQuery());
+
+            assertEquals(1, monitor.getFailures());
+
+            // rolled by the next event
+            assertTrue(next.delete());
+            monitor.received(RECORDS + 1, "/start", false, new InlineQuery());
+            assertEquals(1, monitor.getFailures());
+        }
+
+        new BinaryLogReader(folder.getRoot()).read(event -> read.add(event.getTimeStamp()));
+        assertEquals(RECORDS + 1, read.size());
+        assertEquals(RECORDS - 1, (long) read.get(RECORDS - 1));
+        assertEquals(RECORDS + 1, (long) read.get(RECORDS));
+    }
+}
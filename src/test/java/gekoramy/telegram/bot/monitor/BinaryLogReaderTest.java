@@ -0,0 +1,54 @@
+package gekoramy.telegram.bot.monitor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.api.objects.inlinequery.InlineQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class BinaryLogReaderTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackTheEvents() throws IOException {
+        try (BinaryLogMonitor monitor = new BinaryLogMonitor(folder.getRoot(), 64 * 1024, 0)) {
+            monitor.received(1, "/start", false, new InlineQuery());
+            monitor.received(2, null, true, new InlineQuery());
+        }
+
+        List<String> read = new ArrayList<>();
+        new BinaryLogReader(folder.getRoot()).read(event -> read.add(event.getTimeStamp() + " " + event.getCommand() + " " + event.isHandled()));
+
+        assertEquals(Arrays.asList("1 /start true", "2 null false"), read);
+    }
+
+    @Test
+    public void readsTheCommandsAddedAfterOpening() throws IOException {
+        try (BinaryLogMonitor monitor = new BinaryLogMonitor(folder.getRoot(), 64 * 1024, 0)) {
+            monitor.received(1, "/start", false, new InlineQuery());
+
+            BinaryLogReader reader = new BinaryLogReader(folder.getRoot());
+            assertEquals(Arrays.asList("/start"), reader.getCommands());
+
+            monitor.received(2, "/help", false, new InlineQuery());
+
+            List<String> commands = new ArrayList<>();
+            reader.read(event -> commands.add(event.getCommand()));
+
+            assertEquals(Arrays.asList("/start", "/help"), commands);
+            assertEquals(Arrays.asList("/start", "/help"), reader.getCommands());
+        }
+    }
+}
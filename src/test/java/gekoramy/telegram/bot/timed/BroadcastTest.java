@@ -0,0 +1,133 @@
+package gekoramy.telegram.bot.timed;
+
+import org.junit.Test;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class BroadcastTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Queues nothing: keeps the results to complete, rejecting the chats told
+     */
+    private static final class PendingSender implements TimedSender {
+        private final List<Long> requested = new ArrayList<>();
+        private final List<CompletableFuture<?>> results = new ArrayList<>();
+        private final List<Long> rejected;
+
+        private PendingSender(Long... rejected) {
+            this.rejected = Arrays.asList(rejected);
+        }
+
+        @Override
+        public <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method) {
+            requestExecuteAsync(chatId, method);
+        }
+
+        @Override
+        public <T extends Serializable, Method extends BotApiMethod<T>> void requestExecute(Long chatId, Method method, Priority priority) {
+            requestExecuteAsync(chatId, method, priority);
+        }
+
+        @Override
+        public <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method) {
+            return requestExecuteAsync(chatId, method, Priority.NORMAL);
+        }
+
+        @Override
+        public synchronized <T extends Serializable, Method extends BotApiMethod<T>> CompletableFuture<T> requestExecuteAsync(Long chatId, Method method, Priority priority) {
+            requested.add(chatId);
+            if (rejected.contains(chatId))
+                throw new IllegalStateException("sender shut down");
+
+            CompletableFuture<T> result = new CompletableFuture<>();
+            results.add(result);
+            return result;
+        }
+
+        @Override
+        public Chats getChats() {
+            return null;
+        }
+
+        private synchronized List<Long> requested() {
+            return new ArrayList<>(requested);
+        }
+
+        private synchronized CompletableFuture<?> result(int i) {
+            return results.get(i);
+        }
+    }
+
+    private static SendMessage message(Long chatId) {
+        return new SendMessage(chatId, "news");
+    }
+
+    @Test
+    public void aMethodNotQueuedFailsItsRecipientOnly() throws Exception {
+        PendingSender sender = new PendingSender(2L);
+        Broadcast broadcast = new Broadcast(sender, Arrays.asList(1L, 2L, 3L).iterator(), BroadcastTest::message, null);
+        CompletableFuture<Void> completion = broadcast.start();
+
+        while (sender.requested().size() < 3)
+            TimeUnit.MILLISECONDS.sleep(1);
+
+        sender.result(0).complete(null);
+        sender.result(1).complete(null);
+        completion.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(3, broadcast.getCursor());
+        assertEquals(2, broadcast.getSent());
+        assertEquals(1, broadcast.getFailed());
+    }
+
+    @Test
+    public void anInterruptedBroadcastCompletesOnceTheQueuedRecipientsAreDone() throws Exception {
+        // the feeder is interrupted while reading the first recipient
+        Iterator<Long> chatIds = new Iterator<Long>() {
+            private long next = 1;
+
+            @Override
+            public boolean hasNext() {
+                return next <= 3;
+            }
+
+            @Override
+            public Long next() {
+                if (next == 1)
+                    Thread.currentThread().interrupt();
+
+                return next++;
+            }
+        };
+
+        PendingSender sender = new PendingSender();
+        Broadcast broadcast = new Broadcast(sender, chatIds, BroadcastTest::message, 1, 0, null);
+        CompletableFuture<Void> completion = broadcast.start();
+
+        while (sender.requested().isEmpty())
+            TimeUnit.MILLISECONDS.sleep(1);
+
+        sender.result(0).complete(null);
+        completion.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals(Arrays.asList(1L), sender.requested());
+        assertEquals(1, broadcast.getCursor());
+        assertEquals(1, broadcast.getSent());
+    }
+}
@@ -0,0 +1,86 @@
+package gekoramy.telegram.bot.timed;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class ChatsTest {
+
+    /**
+     * Keeps the commands in memory, counting the loads
+     */
+    private static final class MemoryStore implements ChatStateStore {
+        private final Map<Long, String> commands = new HashMap<>();
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public synchronized String load(long chatId) {
+            loads.incrementAndGet();
+            return commands.get(chatId);
+        }
+
+        @Override
+        public synchronized void storeAll(Map<Long, String> batch) {
+            commands.putAll(batch);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static Chats chats(ChatStateStore store) {
+        return new Chats(1024, 1, TimeUnit.DAYS, store);
+    }
+
+    @Test
+    public void sendingNeverReadsTheStore() {
+        MemoryStore store = new MemoryStore();
+        store.commands.put(1L, "/stored");
+        Chats chats = chats(store);
+
+        long now = System.currentTimeMillis();
+        chats.update(1, now);
+        assertEquals(1, chats.getSent(1, now));
+        assertEquals(0, store.loads.get());
+
+        assertEquals("/stored", chats.getCommand(1));
+        assertEquals("/stored", chats.getCommand(1));
+        assertEquals(1, store.loads.get());
+        chats.close();
+    }
+
+    @Test
+    public void aCommandSetIsNeverOverwrittenByTheStoredOne() {
+        MemoryStore store = new MemoryStore();
+        store.commands.put(1L, "/stored");
+        Chats chats = chats(store);
+
+        chats.update(1, System.currentTimeMillis());
+        chats.setCommand(1, "/set");
+        assertEquals("/set", chats.getCommand(1));
+        assertEquals(0, store.loads.get());
+
+        chats.flush();
+        assertEquals("/set", store.commands.get(1L));
+        chats.close();
+    }
+
+    @Test
+    public void aChatNeverStoredStartsFromTheDefault() {
+        Chats chats = chats(new MemoryStore());
+        assertEquals("start", chats.getCommand(1));
+        chats.close();
+
+        assertEquals("start", chats(null).getCommand(1));
+    }
+}
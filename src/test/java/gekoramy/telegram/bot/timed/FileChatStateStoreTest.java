@@ -0,0 +1,104 @@
+package gekoramy.telegram.bot.timed;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class FileChatStateStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File file() {
+        return new File(folder.getRoot(), "chats.db");
+    }
+
+    @Test
+    public void replaysTheLastCommandOfEveryChat() throws IOException {
+        FileChatStateStore store = new FileChatStateStore(file(), false);
+        Map<Long, String> batch = new HashMap<>();
+        batch.put(1L, "/start");
+        batch.put(2L, "/help");
+        store.storeAll(batch);
+        store.storeAll(Collections.singletonMap(1L, "/città"));
+        store.close();
+
+        store = new FileChatStateStore(file(), false);
+        assertEquals("/città", store.load(1));
+        assertEquals("/help", store.load(2));
+        assertNull(store.load(3));
+        assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void dropsTheBatchTornByACrash() throws IOException {
+        FileChatStateStore store = new FileChatStateStore(file(), false);
+        store.storeAll(Collections.singletonMap(1L, "/start"));
+        store.storeAll(Collections.singletonMap(2L, "/help"));
+        store.close();
+
+        // the last record half written
+        long length = file().length();
+        try (RandomAccessFile raf = new RandomAccessFile(file(), "rw")) {
+            raf.setLength(length - 3);
+        }
+
+        store = new FileChatStateStore(file(), false);
+        assertEquals("/start", store.load(1));
+        assertNull(store.load(2));
+
+        // appended after the last valid record
+        store.storeAll(Collections.singletonMap(3L, "/settings"));
+        store.close();
+
+        store = new FileChatStateStore(file(), false);
+        assertEquals("/start", store.load(1));
+        assertEquals("/settings", store.load(3));
+        assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void compactsTheOverwrittenRecords() throws IOException {
+        FileChatStateStore store = new FileChatStateStore(file(), false);
+        Map<Long, String> batch = new HashMap<>();
+        for (int round = 0; round < 100; round++) {
+            batch.clear();
+            for (long chatId = 0; chatId < 1000; chatId++)
+                batch.put(chatId, "/command " + round);
+            store.storeAll(batch);
+        }
+
+        // 100 000 records written: compacted once past 65 536, only the ones written afterwards are left
+        long record = 16 + "/command 99".length();
+        assertTrue(file().length() <= record * (1000 + 100_000 - 65_000));
+        assertEquals(1000, store.size());
+        for (long chatId = 0; chatId < 1000; chatId++)
+            assertEquals("/command 99", store.load(chatId));
+
+        store.storeAll(Collections.singletonMap(0L, "/after"));
+        store.close();
+
+        store = new FileChatStateStore(file(), false);
+        assertEquals("/after", store.load(0));
+        assertEquals("/command 99", store.load(999));
+        assertEquals(1000, store.size());
+        store.close();
+    }
+}
@@ -0,0 +1,88 @@
+package gekoramy.telegram.bot.timed;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Two nodes in the same JVM, mapping the same file
+ *
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class MappedSharedLimitsTest {
+
+    private static final long LEASE = TimeUnit.MINUTES.toMillis(2);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedSharedLimits node(File file) throws IOException {
+        return new MappedSharedLimits(file, 30, 1, 1024);
+    }
+
+    @Test
+    public void onlyTheOwnerSendsToAChat() throws IOException {
+        File file = folder.newFile();
+        try (MappedSharedLimits a = node(file); MappedSharedLimits b = node(file)) {
+            long now = 1_000_000;
+            assertTrue(a.tryLease(42, now, LEASE));
+            assertTrue(a.tryLease(42, now + 1, LEASE));
+            assertFalse(b.tryLease(42, now + 1, LEASE));
+            assertTrue(b.tryLease(43, now + 1, LEASE));
+
+            // expired
+            assertTrue(b.tryLease(42, now + 1 + LEASE, LEASE));
+            assertFalse(a.tryLease(42, now + 2 + LEASE, LEASE));
+        }
+    }
+
+    @Test
+    public void aLeaseCutByItsOwnerIsTakenSooner() throws IOException {
+        File file = folder.newFile();
+        try (MappedSharedLimits a = node(file); MappedSharedLimits b = node(file)) {
+            long now = 1_000_000;
+            assertTrue(a.tryLease(42, now, LEASE));
+
+            // nothing else queued by a
+            assertTrue(a.tryLease(42, now, 1000));
+            assertFalse(b.tryLease(42, now + 999, LEASE));
+            assertTrue(b.tryLease(42, now + 1000, LEASE));
+        }
+    }
+
+    @Test
+    public void closingReleasesTheLeases() throws IOException {
+        File file = folder.newFile();
+        MappedSharedLimits a = node(file);
+        try (MappedSharedLimits b = node(file)) {
+            assertTrue(a.tryLease(42, 1_000_000, LEASE));
+            a.close();
+            assertTrue(b.tryLease(42, 1_000_001, LEASE));
+        }
+    }
+
+    @Test
+    public void theBucketIsShared() throws IOException {
+        File file = folder.newFile();
+        try (MappedSharedLimits a = node(file); MappedSharedLimits b = node(file)) {
+            long now = 1_000_000;
+            assertEquals(0, a.tryAcquire(now));
+            assertTrue(b.tryAcquire(now) > 0);
+            assertEquals(0, b.tryAcquire(now + 34));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyChatsAreRejected() throws IOException {
+        new MappedSharedLimits(folder.newFile(), 30, 1, 1 << 29);
+    }
+}
@@ -0,0 +1,128 @@
+package gekoramy.telegram.bot.timed;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class OutboundJournalTest {
+
+    private static final int SEGMENT_BYTES = 64 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private OutboundJournal open() throws IOException {
+        return new OutboundJournal(folder.getRoot(), SEGMENT_BYTES);
+    }
+
+    private static SendMessage message(long chatId, String text) {
+        return new SendMessage(chatId, text);
+    }
+
+    private static String text(OutboundJournal.Entry entry) {
+        return ((SendMessage) entry.method).getText();
+    }
+
+    @Test
+    public void replaysOnlyTheMethodsNotAcknowledged() throws IOException {
+        OutboundJournal journal = open();
+        long first = journal.append(1, Priority.INTERACTIVE, message(1, "first"));
+        long second = journal.append(2, Priority.NORMAL, message(2, "second"));
+        long third = journal.append(3, Priority.BULK, message(3, "third"));
+        journal.ack(second);
+        journal.close();
+
+        journal = open();
+        List<OutboundJournal.Entry> pending = journal.getPending();
+        assertEquals(2, pending.size());
+
+        assertEquals(first, pending.get(0).sequence);
+        assertEquals(1, pending.get(0).chatId);
+        assertEquals(Priority.INTERACTIVE, pending.get(0).priority);
+        assertEquals("first", text(pending.get(0)));
+
+        assertEquals(third, pending.get(1).sequence);
+        assertEquals(3, pending.get(1).chatId);
+        assertEquals(Priority.BULK, pending.get(1).priority);
+        assertEquals("third", text(pending.get(1)));
+
+        // sequences keep growing across runs
+        assertTrue(journal.append(4, Priority.NORMAL, message(4, "fourth")) > third);
+        journal.close();
+    }
+
+    @Test
+    public void replaysNothingOnceAllAcknowledged() throws IOException {
+        OutboundJournal journal = open();
+        journal.ack(journal.append(1, Priority.NORMAL, message(1, "a")));
+        journal.ack(journal.append(1, Priority.NORMAL, message(1, "b")));
+        journal.close();
+
+        journal = open();
+        assertTrue(journal.getPending().isEmpty());
+        journal.close();
+    }
+
+    @Test
+    public void skipsTheLastRecordTornByACrash() throws IOException {
+        OutboundJournal journal = open();
+        journal.append(1, Priority.NORMAL, message(1, "kept"));
+        journal.append(2, Priority.NORMAL, message(2, "torn"));
+        journal.close();
+
+        tearLastRecord();
+
+        journal = open();
+        List<OutboundJournal.Entry> pending = journal.getPending();
+        assertEquals(1, pending.size());
+        assertEquals("kept", text(pending.get(0)));
+
+        // the torn record is overwritten by the next one
+        journal.append(3, Priority.NORMAL, message(3, "appended"));
+        journal.close();
+
+        journal = open();
+        pending = journal.getPending();
+        assertEquals(2, pending.size());
+        assertEquals("kept", text(pending.get(0)));
+        assertEquals("appended", text(pending.get(1)));
+        journal.close();
+    }
+
+    /**
+     * Zeroes the tail of the last record, as if the crash came before its bytes reached the disk
+     */
+    private void tearLastRecord() throws IOException {
+        File[] segments = folder.getRoot().listFiles((dir, name) -> name.endsWith(".log"));
+        assertEquals(1, segments.length);
+
+        try (RandomAccessFile raf = new RandomAccessFile(segments[0], "rw")) {
+            int offset = 0;
+            int last = -1;
+            int length;
+            while ((length = raf.readInt()) > 0) {
+                last = offset;
+                offset += length;
+                raf.seek(offset);
+            }
+
+            raf.seek(last);
+            int lastLength = raf.readInt();
+            raf.seek(last + lastLength - 8);
+            raf.write(new byte[8]);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package gekoramy.telegram.bot.timed;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import org.telegram.telegrambots.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.api.methods.BotApiMethod;
+import org.telegram.telegrambots.api.methods.send.SendMessage;
+import org.telegram.telegrambots.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.exceptions.TelegramApiException;
+import org.telegram.telegrambots.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class TimedDefaultAbsSenderTest {
+
+    private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Executes nothing: records the methods executed, failing or blocking the ones told
+     * The global limit is lifted, the backoff is 10 ms
+     */
+    private static final class RecordingSender extends TimedDefaultAbsSender {
+        private final List<String> executed = new ArrayList<>();
+        private final Map<String, Long> firstExecution = new HashMap<>();
+        private final Map<String, TelegramApiException> failures = new ConcurrentHashMap<>();
+        private final Map<String, CountDownLatch> blocked = new ConcurrentHashMap<>();
+        private final List<Exception> failed = new ArrayList<>();
+
+        private RecordingSender(int senderThreads) {
+            super(new DefaultBotOptions(), 20, senderThreads, new Chats(), new TokenBucket(TimeUnit.SECONDS.toNanos(1), Integer.MAX_VALUE));
+            setRetryPolicy(5, 10, 10, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public <T extends Serializable, Method extends BotApiMethod<T>> T execute(Method method) throws TelegramApiException {
+            String label = label(method);
+            synchronized (this) {
+                executed.add(label);
+                firstExecution.putIfAbsent(label, System.currentTimeMillis());
+                notifyAll();
+            }
+
+            CountDownLatch latch = blocked.remove(label);
+            if (latch != null) {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            TelegramApiException failure = failures.remove(label);
+            if (failure != null)
+                throw failure;
+
+            return null;
+        }
+
+        @Override
+        protected synchronized void onFailure(Exception e) {
+            failed.add(e);
+        }
+
+        @Override
+        public String getBotToken() {
+            return "test";
+        }
+
+        /**
+         * @return the first n methods executed, failed attempts included
+         */
+        private synchronized List<String> awaitExecuted(int n) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT;
+            long left;
+            while (executed.size() < n && (left = deadline - System.currentTimeMillis()) > 0)
+                wait(left);
+
+            assertTrue("executed " + executed, executed.size() >= n);
+            return new ArrayList<>(executed.subList(0, n));
+        }
+
+        private synchronized long firstExecution(String label) {
+            return firstExecution.get(label);
+        }
+    }
+
+    private RecordingSender sender;
+
+    @After
+    public void tearDown() {
+        if (sender != null)
+            sender.shutdownSender();
+    }
+
+    private static String label(BotApiMethod<?> method) {
+        if (method instanceof AnswerCallbackQuery)
+            return ((AnswerCallbackQuery) method).getCallbackQueryId();
+
+        if (method instanceof EditMessageText)
+            return "edit " + ((EditMessageText) method).getText();
+
+        return ((SendMessage) method).getText();
+    }
+
+    private static AnswerCallbackQuery answer(String id) {
+        return new AnswerCallbackQuery().setCallbackQueryId(id);
+    }
+
+    private static EditMessageText edit(String text) {
+        return new EditMessageText().setChatId(1L).setMessageId(10).setText(text);
+    }
+
+    private static TelegramApiRequestException serverError() {
+        return new TelegramApiRequestException("Error executing method", new JSONObject("{\"ok\":false,\"error_code\":502,\"description\":\"Bad Gateway\"}"));
+    }
+
+    private static TelegramApiRequestException floodWait(int seconds) {
+        return new TelegramApiRequestException("Error executing method", new JSONObject("{\"ok\":false,\"error_code\":429,\"description\":\"Too Many Requests: retry after " + seconds + "\",\"parameters\":{\"retry_after\":" + seconds + "}}"));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline)
+                fail("timed out");
+
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    @Test
+    public void aRetriedMethodKeepsItsPlaceInTheChat() throws InterruptedException {
+        sender = new RecordingSender(2);
+        sender.failures.put("1", serverError());
+
+        for (int i = 1; i <= 3; i++)
+            sender.requestExecute(1L, answer(String.valueOf(i)));
+
+        assertEquals(Arrays.asList("1", "1", "2", "3"), sender.awaitExecuted(4));
+        assertEquals(1, sender.getRetries());
+        assertTrue(sender.failed.isEmpty());
+    }
+
+    @Test
+    public void aFloodWaitWithoutChatPausesEveryChat() throws InterruptedException {
+        sender = new RecordingSender(2);
+        sender.failures.put("global", floodWait(1));
+
+        sender.requestExecute(null, answer("global"));
+        await(() -> sender.getRetries() == 1);
+        sender.requestExecute(2L, answer("chat"));
+
+        List<String> executed = sender.awaitExecuted(3);
+        assertEquals("global", executed.get(0));
+        assertTrue(executed.containsAll(Arrays.asList("global", "chat")));
+        assertTrue(sender.firstExecution("chat") - sender.firstExecution("global") >= TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Test
+    public void aCoalescedEditOvertakesTheAnswerQueuedAfterIt() throws Exception {
+        sender = new RecordingSender(2);
+
+        // the chat is busy, so the next methods pile up in its queue
+        CountDownLatch busy = new CountDownLatch(1);
+        sender.blocked.put("busy", busy);
+        sender.requestExecute(1L, new SendMessage(1L, "busy"));
+        sender.awaitExecuted(1);
+
+        CompletableFuture<Serializable> first = sender.requestExecuteAsync(1L, edit("one"));
+        sender.requestExecute(1L, answer("answer"));
+        CompletableFuture<Serializable> second = sender.requestExecuteAsync(1L, edit("two"));
+        busy.countDown();
+
+        // the second edit is sent in place of the first one, so before the answer
+        assertEquals(Arrays.asList("busy", "edit two", "answer"), sender.awaitExecuted(3));
+        assertEquals(1, sender.getCoalesced());
+
+        first.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        second.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+    }
+
+    @Test
+    public void theBulkLaneGetsItsShareOnly() throws InterruptedException {
+        // a single worker executes the methods in the order they are dispatched
+        sender = new RecordingSender(1);
+        sender.failures.put("global", floodWait(1));
+
+        // every chat waits for the flood wait, so all of them are ready together once it's over
+        sender.requestExecute(null, answer("global"));
+        await(() -> sender.getRetries() == 1);
+        for (long chatId = 1; chatId <= 20; chatId++)
+            sender.requestExecute(chatId, answer("bulk " + chatId), Priority.BULK);
+        for (long chatId = 21; chatId <= 40; chatId++)
+            sender.requestExecute(chatId, answer("interactive " + chatId), Priority.INTERACTIVE);
+
+        List<String> executed = sender.awaitExecuted(42);
+        executed.removeIf("global"::equals);
+        assertEquals(40, executed.size());
+
+        // weights 6 : 1, the bulk lane isn't starved either
+        int bulk = 0;
+        for (String label : executed.subList(0, 21))
+            if (label.startsWith("bulk"))
+                bulk++;
+
+        assertTrue("bulk sent among the first 21: " + bulk, bulk >= 2 && bulk <= 5);
+    }
+}
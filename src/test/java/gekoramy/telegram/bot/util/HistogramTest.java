@@ -0,0 +1,62 @@
+package gekoramy.telegram.bot.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Luca Mosetti
+ * @since 10/2026
+ */
+public class HistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        long previous = -1;
+        for (int i = 0; i < Histogram.index(Long.MAX_VALUE) + 1; i++) {
+            assertEquals(previous + 1, Histogram.lowest(i));
+            assertEquals(i, Histogram.index(Histogram.lowest(i)));
+            assertEquals(i, Histogram.index(Histogram.highest(i)));
+            previous = Histogram.highest(i);
+        }
+
+        assertEquals(Long.MAX_VALUE, previous);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 1; value <= 10; value++)
+            histogram.record(value);
+
+        assertEquals(5, histogram.getPercentile(50));
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinTwoPercent() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1_000_000; value++)
+            histogram.record(value);
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            double expected = percentile * 10_000;
+            double error = Math.abs(histogram.getPercentile(percentile) - expected) / expected;
+            assertTrue(percentile + "th off by " + error, error <= 0.02);
+        }
+
+        assertEquals(1_000_000, histogram.getPercentile(100));
+        assertEquals(1_000_000, histogram.getMax());
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+}